@@ -27,6 +27,8 @@ import org.tomitribe.lieutenant.docker.Docker;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class LieutenantCommand {
@@ -34,6 +36,10 @@ public class LieutenantCommand {
     @Command
     public void purge(@Option("withBranch") @Default("true") boolean withBranch,
                       @Option("withTags") @Default("true") boolean withTags,
+                      @Option("jobs") @Default("1") int jobs,
+                      @Option("excludes") String excludes,
+                      @Option("gitIndex") @Default("true") boolean gitIndex,
+                      @Option("registry") @Default("false") boolean registry,
                       @Option("dockerproperties") File dockerProperties) throws IOException {
 
         final File currentDir = new File(".");
@@ -47,7 +53,10 @@ public class LieutenantCommand {
 
             Config config = Config.readFile(lieutenantFile);
             LieutenantConfig lieutenantConfig = getLieutenantConfig(null, null, withBranch, withTags,
-                    null);
+                    null, jobs, 1, true);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
+            lieutenantConfig.setPurgeRegistry(registry);
 
             config.setDockerConfig(dockerConfig);
             config.setLieutenantConfig(lieutenantConfig);
@@ -56,7 +65,10 @@ public class LieutenantCommand {
 
         } else {
             LieutenantConfig lieutenantConfig = getLieutenantConfig(null, null, withBranch, withTags,
-                    null);
+                    null, jobs, 1, true);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
+            lieutenantConfig.setPurgeRegistry(registry);
 
             lieutenant.purge(lieutenantConfig, dockerConfig);
         }
@@ -69,6 +81,14 @@ public class LieutenantCommand {
                       @Option("withBranch") @Default("true") boolean withBranch,
                       @Option("withTags") @Default("true") boolean withTags,
                       @Option("exclusionImages") String exclusionImages,
+                      @Option("jobs") @Default("1") int jobs,
+                      @Option("pushJobs") @Default("1") int pushJobs,
+                      @Option("pipeline") @Default("false") boolean pipeline,
+                      @Option("pushRetries") @Default("3") int pushRetries,
+                      @Option("pushRetryDelay") @Default("1000") long pushRetryDelay,
+                      @Option("failFast") @Default("true") boolean failFast,
+                      @Option("excludes") String excludes,
+                      @Option("gitIndex") @Default("true") boolean gitIndex,
                       @Option("dockerproperties") File dockerProperties) throws IOException {
 
         final File currentDir = new File(".");
@@ -82,7 +102,12 @@ public class LieutenantCommand {
 
             Config config = Config.readFile(lieutenantFile);
             LieutenantConfig lieutenantConfig = getLieutenantConfig(prefix, suffix, withBranch, withTags,
-                    exclusionImages);
+                    exclusionImages, jobs, pushJobs, failFast);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
+            lieutenantConfig.setPipeline(pipeline);
+            lieutenantConfig.setPushRetries(pushRetries);
+            lieutenantConfig.setPushRetryDelay(pushRetryDelay);
 
             config.setDockerConfig(dockerConfig);
             config.setLieutenantConfig(lieutenantConfig);
@@ -91,7 +116,12 @@ public class LieutenantCommand {
 
         } else {
             LieutenantConfig lieutenantConfig = getLieutenantConfig(prefix, suffix, withBranch, withTags,
-                    exclusionImages);
+                    exclusionImages, jobs, pushJobs, failFast);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
+            lieutenantConfig.setPipeline(pipeline);
+            lieutenantConfig.setPushRetries(pushRetries);
+            lieutenantConfig.setPushRetryDelay(pushRetryDelay);
 
             lieutenant.push(lieutenantConfig, dockerConfig);
         }
@@ -103,6 +133,10 @@ public class LieutenantCommand {
                       @Option("prefix") String prefix, @Option("suffix") String suffix,
                       @Option("withBranch") @Default("true") boolean withBranch,
                       @Option("withTags") @Default("true") boolean withTags,
+                      @Option("jobs") @Default("1") int jobs,
+                      @Option("failFast") @Default("true") boolean failFast,
+                      @Option("excludes") String excludes,
+                      @Option("gitIndex") @Default("true") boolean gitIndex,
                       @Option("dockerproperties") File dockerProperties) throws IOException {
 
         final File currentDir = new File(".");
@@ -116,7 +150,9 @@ public class LieutenantCommand {
 
             Config config = Config.readFile(lieutenantFile);
             LieutenantConfig lieutenantConfig = getLieutenantConfig(prefix, suffix, withBranch, withTags,
-                    null);
+                    null, jobs, 1, failFast);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
 
             config.setDockerConfig(dockerConfig);
             config.setLieutenantConfig(lieutenantConfig);
@@ -125,24 +161,89 @@ public class LieutenantCommand {
 
         } else {
             LieutenantConfig lieutenantConfig = getLieutenantConfig(prefix, suffix, withBranch, withTags,
-                    null);
+                    null, jobs, 1, failFast);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
 
             lieutenant.build(lieutenantConfig, dockerConfig);
         }
 
     }
 
+    @Command
+    public void watch(@Option("force") @Default("false") boolean force,
+                      @Option("prefix") String prefix, @Option("suffix") String suffix,
+                      @Option("withBranch") @Default("true") boolean withBranch,
+                      @Option("withTags") @Default("true") boolean withTags,
+                      @Option("jobs") @Default("1") int jobs,
+                      @Option("debounce") @Default("500") long debounce,
+                      @Option("excludes") String excludes,
+                      @Option("gitIndex") @Default("true") boolean gitIndex,
+                      @Option("dockerproperties") File dockerProperties) throws IOException {
+
+        final File currentDir = new File(".");
+        final File lieutenantFile = new File(currentDir, "lieutenant.yml");
+
+        Docker.DockerConfig dockerConfig = loadDockerProperties(dockerProperties);
+
+        Lieutenant lieutenant = new Lieutenant(currentDir);
+
+        // A failed application must not stop the others from being rebuilt while watching
+        if (lieutenantFile.exists()) {
+
+            Config config = Config.readFile(lieutenantFile);
+            LieutenantConfig lieutenantConfig = getLieutenantConfig(prefix, suffix, withBranch, withTags,
+                    null, jobs, 1, false);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
+            lieutenantConfig.setWatchDebounce(debounce);
+            lieutenantConfig.setForce(force);
+
+            config.setDockerConfig(dockerConfig);
+            config.setLieutenantConfig(lieutenantConfig);
+
+            lieutenant.watch(config);
+
+        } else {
+            LieutenantConfig lieutenantConfig = getLieutenantConfig(prefix, suffix, withBranch, withTags,
+                    null, jobs, 1, false);
+            lieutenantConfig.setExcludes(split(excludes));
+            lieutenantConfig.setDiscoverFromGitIndex(gitIndex);
+            lieutenantConfig.setWatchDebounce(debounce);
+            lieutenantConfig.setForce(force);
+
+            lieutenant.watch(lieutenantConfig, dockerConfig);
+        }
+
+    }
+
     private LieutenantConfig getLieutenantConfig(String prefix, String suffix,
-                                                 boolean withBranch, boolean withTags, String exclusionImages) {
+                                                 boolean withBranch, boolean withTags, String exclusionImages,
+                                                 int jobs, int pushJobs, boolean failFast) {
         LieutenantConfig lieutenantConfig = new LieutenantConfig();
         lieutenantConfig.setExclusionImagesPattern(exclusionImages);
         lieutenantConfig.setWithBranches(withBranch);
         lieutenantConfig.setWithTags(withTags);
         lieutenantConfig.setSuffix(suffix);
         lieutenantConfig.setPrefix(prefix);
+        lieutenantConfig.setJobs(jobs);
+        lieutenantConfig.setPushJobs(pushJobs);
+        lieutenantConfig.setFailFast(failFast);
         return lieutenantConfig;
     }
 
+    private static List<String> split(String commaSeparated) {
+        final List<String> values = new ArrayList<>();
+        if (commaSeparated != null) {
+            for (String value : commaSeparated.split(",")) {
+                if (!value.trim().isEmpty()) {
+                    values.add(value.trim());
+                }
+            }
+        }
+        return values;
+    }
+
     private Docker.DockerConfig loadDockerProperties(File dockerProperties) throws IOException {
         Docker.DockerConfig dockerConfig = new Docker.DockerConfig();
         if (dockerProperties != null) {
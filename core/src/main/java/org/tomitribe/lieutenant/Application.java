@@ -16,8 +16,20 @@
  */
 package org.tomitribe.lieutenant;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
 public class Application {
 
+    private static final String SCRATCH = "scratch";
+
     private String image;
     private String build;
 
@@ -43,6 +55,94 @@ public class Application {
         return this.image != null;
     }
 
+    /**
+     * Resolves the Dockerfile of this application. Build might point either to the Dockerfile itself or to the
+     * directory containing a file named Dockerfile.
+     */
+    public File getDockerfile(File home) {
+        final File location = new File(home, this.build);
+        if (location.isDirectory()) {
+            return new File(location, "Dockerfile");
+        }
+        return location;
+    }
+
+    /**
+     * Reads the FROM instructions of the Dockerfile and returns the repository names (without tag nor digest) of the
+     * images this application is built from. Multi-stage aliases and scratch are not returned.
+     */
+    public Set<String> getBaseImages(File home) {
+        final File dockerfile = getDockerfile(home);
+        if (!dockerfile.isFile()) {
+            return Collections.emptySet();
+        }
+
+        try {
+            return parseBaseImages(Files.readAllLines(dockerfile.toPath(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static Set<String> parseBaseImages(List<String> lines) {
+        final Set<String> baseImages = new HashSet<>();
+        final Set<String> stages = new HashSet<>();
+
+        final StringBuilder instruction = new StringBuilder();
+        for (String line : lines) {
+            final String trimmed = line.trim();
+            if (trimmed.startsWith("#")) {
+                continue;
+            }
+
+            if (trimmed.endsWith("\\")) {
+                instruction.append(trimmed, 0, trimmed.length() - 1).append(' ');
+                continue;
+            }
+            instruction.append(trimmed);
+
+            final String[] tokens = instruction.toString().trim().split("\\s+");
+            instruction.setLength(0);
+
+            if (tokens.length < 2 || !"FROM".equals(tokens[0].toUpperCase(Locale.ENGLISH))) {
+                continue;
+            }
+
+            int index = 1;
+            while (index < tokens.length - 1 && tokens[index].startsWith("--")) {
+                index++;
+            }
+
+            final String repository = repository(tokens[index]);
+            if (!SCRATCH.equals(repository) && !stages.contains(repository.toLowerCase(Locale.ENGLISH))) {
+                baseImages.add(repository);
+            }
+
+            // Later stages might be built FROM this one using its alias
+            if (index + 2 < tokens.length && "AS".equals(tokens[index + 1].toUpperCase(Locale.ENGLISH))) {
+                stages.add(tokens[index + 2].toLowerCase(Locale.ENGLISH));
+            }
+        }
+
+        return Collections.unmodifiableSet(baseImages);
+    }
+
+    private static String repository(String reference) {
+        String repository = reference;
+
+        final int digestIndex = repository.indexOf('@');
+        if (digestIndex > -1) {
+            repository = repository.substring(0, digestIndex);
+        }
+
+        final int tagIndex = repository.lastIndexOf(':');
+        if (tagIndex > repository.lastIndexOf('/')) {
+            repository = repository.substring(0, tagIndex);
+        }
+
+        return repository;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
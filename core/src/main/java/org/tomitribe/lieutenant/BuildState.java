@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Latest images built by previous runs, persisted in {@code .lieutenant/state} as image tag to image id and build
+ * context hash. It lets a run decide that latest is already built from the current build context without asking the
+ * daemon to find images by label: recorded ids are just checked against the ids the daemon currently resolves.
+ *
+ * Commit tags are not recorded, the listing of the daemon every run makes already tells whether a commit is built.
+ */
+class BuildState {
+
+    static final String DIRECTORY = ".lieutenant";
+
+    private static final String FILENAME = "state";
+    private static final String SEPARATOR = " ";
+    private static final String ID_PREFIX = "sha256:";
+
+    private static Logger logger = Logger.getLogger(BuildState.class.getName());
+
+    private final File file;
+    private final Properties entries = new Properties();
+    private boolean modified;
+
+    private BuildState(File file) {
+        this.file = file;
+    }
+
+    static BuildState load(File home) {
+        final BuildState state = new BuildState(new File(new File(home, DIRECTORY), FILENAME));
+
+        if (state.file.isFile()) {
+            try (InputStream in = new FileInputStream(state.file)) {
+                state.entries.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                // the state is only an optimization, a corrupted one is just ignored
+                logger.log(Level.WARNING, String.format("Ignoring unreadable build state %s", state.file), e);
+                state.entries.clear();
+            }
+        }
+
+        return state;
+    }
+
+    synchronized String imageId(String imageTag) {
+        final String entry = this.entries.getProperty(imageTag);
+        return entry == null ? null : entry.split(SEPARATOR)[0];
+    }
+
+    synchronized String contextHash(String imageTag) {
+        final String entry = this.entries.getProperty(imageTag);
+        if (entry == null) {
+            return null;
+        }
+        final String[] values = entry.split(SEPARATOR);
+        return values.length > 1 ? values[1] : null;
+    }
+
+    /**
+     * @param daemonImageIds ids of the images as currently tagged by the daemon.
+     * @return the recorded image id of given tag if the daemon still tags that image so, null otherwise.
+     */
+    synchronized String verifiedImageId(String imageTag, Map<String, String> daemonImageIds) {
+        final String imageId = imageId(imageTag);
+        if (imageId == null) {
+            return null;
+        }
+
+        if (sameImage(imageId, daemonImageIds.get(imageTag))) {
+            return imageId;
+        }
+
+        logger.log(Level.FINE, String.format("Build state of %s is outdated", imageTag));
+        forget(imageTag);
+        return null;
+    }
+
+    synchronized void record(String imageTag, String imageId, String contextHash) {
+        if (imageId == null) {
+            forget(imageTag);
+            return;
+        }
+
+        this.entries.setProperty(imageTag, contextHash == null ? imageId : imageId + SEPARATOR + contextHash);
+        this.modified = true;
+    }
+
+    synchronized void forget(String imageTag) {
+        if (this.entries.remove(imageTag) != null) {
+            this.modified = true;
+        }
+    }
+
+    /**
+     * Writes the state if it changed. The directory gets its own .gitignore so the state never makes the working tree
+     * dirty.
+     */
+    synchronized void save() {
+        if (!this.modified) {
+            return;
+        }
+
+        final File directory = this.file.getParentFile();
+        try {
+            Files.createDirectories(directory.toPath());
+
+            final File gitignore = new File(directory, ".gitignore");
+            if (!gitignore.exists()) {
+                Files.write(gitignore.toPath(), "*\n".getBytes(StandardCharsets.UTF_8));
+            }
+
+            try (OutputStream out = new FileOutputStream(this.file)) {
+                this.entries.store(out, "Images built by Lieutenant");
+            }
+            this.modified = false;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, String.format("Unable to write build state %s", this.file), e);
+        }
+    }
+
+    static boolean sameImage(String imageId, String otherImageId) {
+        if (imageId == null || otherImageId == null) {
+            return false;
+        }
+
+        final String id = strip(imageId);
+        final String otherId = strip(otherImageId);
+        // ids might be abbreviated
+        return !id.isEmpty() && !otherId.isEmpty() && (id.startsWith(otherId) || otherId.startsWith(id));
+    }
+
+    private static String strip(String imageId) {
+        return imageId.startsWith(ID_PREFIX) ? imageId.substring(ID_PREFIX.length()) : imageId;
+    }
+}
@@ -79,6 +79,38 @@ public class Config {
         return this.lieutenantConfig.isForce();
     }
 
+    public int getJobs() {
+        return this.lieutenantConfig.getJobs();
+    }
+
+    public int getPushJobs() {
+        return this.lieutenantConfig.getPushJobs();
+    }
+
+    public int getPushRetries() {
+        return this.lieutenantConfig.getPushRetries();
+    }
+
+    public long getPushRetryDelay() {
+        return this.lieutenantConfig.getPushRetryDelay();
+    }
+
+    public boolean isFailFast() {
+        return this.lieutenantConfig.isFailFast();
+    }
+
+    public boolean isPipeline() {
+        return this.lieutenantConfig.isPipeline();
+    }
+
+    public long getWatchDebounce() {
+        return this.lieutenantConfig.getWatchDebounce();
+    }
+
+    public boolean isPurgeRegistry() {
+        return this.lieutenantConfig.isPurgeRegistry();
+    }
+
     public String getSuffix() {
         return this.lieutenantConfig.getSuffix();
     }
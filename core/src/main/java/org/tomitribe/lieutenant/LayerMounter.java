@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import org.tomitribe.lieutenant.docker.Docker;
+import org.tomitribe.lieutenant.docker.Registry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Mounts the layers of the images pushed during a run into the repositories of the images built from them. An image
+ * contains every layer of the image it is built from, so the registry just links them instead of receiving them again
+ * for every image name.
+ *
+ * The daemon does not tell which layers an image it holds is made of, so layers are only mounted from the images it
+ * is known to be built from. Images are tracked under the name they are pushed under.
+ */
+class LayerMounter {
+
+    private static final Logger logger = Logger.getLogger(LayerMounter.class.getName());
+
+    private final Docker docker;
+    private final Map<String, Set<String>> dependencies;
+
+    private final ConcurrentMap<String, String> pushedImages = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> layers = new ConcurrentHashMap<>();
+
+    /**
+     * @param dependencies for each application the applications it is built from.
+     */
+    LayerMounter(Docker docker, Map<String, Set<String>> dependencies) {
+        this.docker = docker;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Records that the registry holds an image of the application. All tags of an application in a run refer to the
+     * same image, so the first one is enough.
+     */
+    void pushed(String application, String image) {
+        this.pushedImages.putIfAbsent(application, this.docker.pushedName(image));
+    }
+
+    /**
+     * Mounts into the repository of the image the layers of the images already pushed for the applications it is
+     * built from, when they live in the same registry.
+     *
+     * @return number of layers mounted.
+     */
+    int mount(String application, String image) {
+        final Set<String> parents = this.dependencies.get(application);
+        if (parents == null) {
+            return 0;
+        }
+
+        final String pushedName = this.docker.pushedName(image);
+        final Registry registry = this.docker.registry(pushedName);
+        final String repository = Registry.repository(pushedName);
+
+        int mounted = 0;
+        for (String parent : parents) {
+            final String parentImage = this.pushedImages.get(parent);
+            if (parentImage == null || registry != this.docker.registry(parentImage)) {
+                continue;
+            }
+
+            final String from = Registry.repository(parentImage);
+            if (from.equals(repository)) {
+                // layers of the same repository are already there
+                continue;
+            }
+
+            for (String digest : layers(registry, parentImage)) {
+                if (registry.mount(repository, digest, from)) {
+                    mounted++;
+                }
+            }
+        }
+
+        if (mounted > 0) {
+            logger.log(Level.INFO, String.format("Mounted %d layers into %s from images pushed before", mounted, repository));
+        }
+        return mounted;
+    }
+
+    private List<String> layers(Registry registry, String image) {
+        List<String> imageLayers = this.layers.get(image);
+        if (imageLayers == null) {
+            imageLayers = Collections.unmodifiableList(registry.layers(Registry.repository(image), Registry.tag(image)));
+            this.layers.put(image, imageLayers);
+        }
+        return imageLayers;
+    }
+}
@@ -16,18 +16,36 @@
  */
 package org.tomitribe.lieutenant;
 
+import org.tomitribe.lieutenant.concurrent.Retry;
+import org.tomitribe.lieutenant.concurrent.TaskFailedException;
+import org.tomitribe.lieutenant.concurrent.TaskPipeline;
+import org.tomitribe.lieutenant.concurrent.TaskRunner;
+import org.tomitribe.lieutenant.docker.BuildContext;
 import org.tomitribe.lieutenant.docker.Docker;
+import org.tomitribe.lieutenant.docker.ImageIndex;
 import org.tomitribe.lieutenant.docker.DockerfileFinder;
+import org.tomitribe.lieutenant.docker.LayerPush;
+import org.tomitribe.lieutenant.docker.PushReport;
+import org.tomitribe.lieutenant.docker.Registry;
+import org.tomitribe.lieutenant.docker.RemovalSummary;
 import org.tomitribe.lieutenant.git.Git;
+import org.tomitribe.lieutenant.git.GitSnapshot;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -36,6 +54,10 @@ public class Lieutenant {
 
     private static Logger logger = Logger.getLogger(Lieutenant.class.getName());
 
+    private static final long MAX_PUSH_RETRY_DELAY = 60000;
+    // images detailed in the push summary
+    private static final int PUSH_SUMMARY_IMAGES = 5;
+
     private File home;
     Git git;
     Docker docker;
@@ -48,54 +70,268 @@ public class Lieutenant {
     }
 
     public Set<String> push(LieutenantConfig lieutenantConfig, Docker.DockerConfig dockerConfig) {
-        Set<String> createdImages = this.build(lieutenantConfig, dockerConfig);
-
-        return pushImages(lieutenantConfig, dockerConfig, createdImages);
+        return this.push(discoverApplications(lieutenantConfig, dockerConfig));
     }
 
+    /**
+     * Pushes are retried with backoff. Layers already uploaded by a failed attempt are skipped by the registry, so a
+     * retry only sends what is missing. Images the registry already has under the same tag are not pushed at all.
+     *
+     * @throws PushFailedException if an application could not be built or an image could not be pushed, holding the
+     * images that were pushed anyway.
+     *
+     * When pipelined, images are pushed as soon as their application is built, so the image of an application is not
+     * guaranteed to be pushed before the images built from it: their shared layers are only mounted when it happens
+     * to be.
+     */
     public Set<String> push(Config config) {
-        Set<String> createdImages = this.build(config);
 
-        return pushImages(config.getLieutenantConfig(), config.getDockerConfig(), createdImages);
+        if (!config.isPipeline()) {
+            final Map<String, Set<String>> builtImages;
+            try {
+                builtImages = buildApplications(config, null, null);
+            } catch (TaskFailedException e) {
+                throw new PushFailedException(e.getFailures(), Collections.<String, PushReport>emptyMap());
+            }
+
+            return pushImages(config, builtImages);
+        }
+
+        // Images are pushed as soon as their application is built, while the rest of applications are still building
+        final TaskPipeline<PushReport> pushes = new TaskPipeline<>("push", config.getPushJobs(), config.isFailFast());
+        try {
+            this.build(config, pushes, null);
+        } catch (TaskFailedException e) {
+            throw pushFailure(config, pushes, e.getFailures());
+        } catch (RuntimeException e) {
+            pushes.cancel();
+            throw e;
+        }
+
+        try {
+            return pushedImages(pushes.await());
+        } catch (TaskFailedException e) {
+            throw pushFailure(e);
+        }
     }
 
-    private Set<String> pushImages(LieutenantConfig lieutenantConfig, Docker.DockerConfig dockerConfig, Set<String> createdImages) {
+    /**
+     * @return the failure of the pushes, holding the reports of the images pushed anyway.
+     */
+    private PushFailedException pushFailure(TaskFailedException pushFailure) {
+        final Map<String, PushReport> pushReports = new HashMap<>();
+        for (Map.Entry<String, Object> result : pushFailure.getResults().entrySet()) {
+            pushReports.put(result.getKey(), (PushReport) result.getValue());
+        }
+
+        pushedImages(pushReports);
+        return new PushFailedException(pushFailure.getFailures(), pushReports);
+    }
 
-        final Set<String> pushedImages = new HashSet<>();
+    /**
+     * Unless failing fast, a failed build does not stop the pushes of the images that did build. They are waited for
+     * and reported along with the failures.
+     */
+    private PushFailedException pushFailure(Config config, TaskPipeline<PushReport> pushes, Map<String, Throwable> buildFailures) {
+        final Map<String, Throwable> failures = new LinkedHashMap<>(buildFailures);
 
-        if (this.docker == null) {
-            this.docker = dockerConfig.build();
+        if (config.isFailFast()) {
+            pushes.cancel();
+        } else {
+            try {
+                pushes.await();
+            } catch (TaskFailedException e) {
+                failures.putAll(e.getFailures());
+            }
+        }
+
+        final Map<String, PushReport> pushReports = pushes.completed();
+        pushedImages(pushReports);
+        return new PushFailedException(failures, pushReports);
+    }
+
+    /**
+     * Images are pushed once the images of the applications they are built from are, so the layers they share are
+     * mounted from those instead of being uploaded concurrently for every image name: the daemon only reuses the
+     * layers of pushes that are done, and pushes to different repositories upload the same layer each.
+     *
+     * That order is only an optimization: an image is still pushed when the push of a parent image fails, just
+     * without mounting its layers.
+     */
+    private Set<String> pushImages(Config config, Map<String, Set<String>> builtImages) {
+
+        final Map<String, Set<String>> dependencies = resolveDependencies(config);
+        final LayerMounter layerMounter = new LayerMounter(this.docker, dependencies);
+
+        final Map<String, Set<String>> imagesToPush = new HashMap<>();
+        final Set<String> allImages = new HashSet<>();
+        for (Map.Entry<String, Set<String>> application : builtImages.entrySet()) {
+            final Set<String> images = imagesToPush(config.getLieutenantConfig(), application.getValue());
+            imagesToPush.put(application.getKey(), images);
+            allImages.addAll(images);
+        }
+
+        final Map<String, String> imageIds = localImageIds(allImages);
+        final Map<String, Callable<PushReport>> pushes = new HashMap<>();
+        for (Map.Entry<String, Set<String>> application : imagesToPush.entrySet()) {
+            for (String image : application.getValue()) {
+                pushes.put(image, pushTask(image, imageIds.get(image), application.getKey(), config.getLieutenantConfig(),
+                        layerMounter));
+            }
         }
 
-        Pattern imagePattern = lieutenantConfig.getExclusionImagesPattern();
-        for (String image : createdImages) {
-            if (imagePattern != null) {
-                if (!imagePattern.matcher(image).matches()) {
-                    this.docker.push(image);
-                    pushedImages.add(image);
+        final Map<String, Set<String>> pushDependencies = new HashMap<>();
+        for (Map.Entry<String, Set<String>> application : imagesToPush.entrySet()) {
+            final Set<String> parents = dependencies.get(application.getKey());
+            if (parents == null) {
+                continue;
+            }
+
+            final Set<String> parentImages = new HashSet<>();
+            for (String parent : parents) {
+                if (imagesToPush.containsKey(parent)) {
+                    parentImages.addAll(imagesToPush.get(parent));
                 }
-            } else {
-                this.docker.push(image);
-                pushedImages.add(image);
+            }
+            for (String image : application.getValue()) {
+                pushDependencies.put(image, parentImages);
             }
         }
 
-        return pushedImages;
+        try {
+            return pushedImages(new TaskRunner("push", config.getPushJobs(), config.isFailFast()).run(pushes, pushDependencies, false));
+        } catch (TaskFailedException e) {
+            throw pushFailure(e);
+        }
     }
 
-    public void purge(LieutenantConfig lieutenantConfig, Docker.DockerConfig dockerConfig) {
-        Config config = new Config();
-        config.setLieutenantConfig(lieutenantConfig);
-        config.setDockerConfig(dockerConfig);
+    private Set<String> imagesToPush(LieutenantConfig lieutenantConfig, Set<String> images) {
+        final Set<String> imagesToPush = new HashSet<>();
+        for (String image : images) {
+            if (!isExcludedFromPush(lieutenantConfig, image)) {
+                imagesToPush.add(image);
+            }
+        }
+        return imagesToPush;
+    }
 
-        final Set<Path> dockerfiles = getDockerfileLocations();
+    /**
+     * Resolves the local ids of the images to push with a single listing of the daemon, for the registry to be
+     * compared with. Unresolved images are just pushed.
+     */
+    private Map<String, String> localImageIds(Set<String> images) {
+        if (images.isEmpty()) {
+            return Collections.emptyMap();
+        }
 
-        for (Path dockerfile : dockerfiles) {
-            Application application = new Application(autocreateImageName(dockerfile), dockerfile.toString());
-            config.addApplication(dockerfile.toString(), application);
+        try {
+            return this.docker.resolveImageIds(images);
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, String.format("Unable to resolve the ids of %s", images), e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private boolean isExcludedFromPush(LieutenantConfig lieutenantConfig, String image) {
+        final Pattern imagePattern = lieutenantConfig.getExclusionImagesPattern();
+
+        if (imagePattern != null && imagePattern.matcher(image).matches()) {
+            logger.log(Level.INFO, String.format("Skipping push of %s - image is excluded", image));
+            return true;
+        }
+
+        return false;
+    }
+
+    private Callable<PushReport> pushTask(final String image, final String imageId, final String applicationName,
+                                          LieutenantConfig lieutenantConfig, final LayerMounter layerMounter) {
+        final Retry retry = new Retry("push", lieutenantConfig.getPushRetries(), lieutenantConfig.getPushRetryDelay(),
+                MAX_PUSH_RETRY_DELAY);
+
+        return new Callable<PushReport>() {
+            @Override
+            public PushReport call() throws Exception {
+                if (isPushed(image, imageId)) {
+                    logger.log(Level.INFO, String.format("Skipping push of %s - registry already has this image", image));
+                    layerMounter.pushed(applicationName, image);
+                    return new PushReport(image, null, 0, Collections.<LayerPush>emptyList());
+                }
+
+                mountLayers(layerMounter, applicationName, image);
+
+                final PushReport report = retry.call(image, new Callable<PushReport>() {
+                    @Override
+                    public PushReport call() {
+                        return docker.push(image);
+                    }
+                });
+                layerMounter.pushed(applicationName, image);
+                return report;
+            }
+        };
+    }
+
+    /**
+     * Mounting is only an optimization, layers that could not be mounted are just uploaded by the push.
+     */
+    private void mountLayers(LayerMounter layerMounter, String applicationName, String image) {
+        try {
+            layerMounter.mount(applicationName, image);
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, String.format("Unable to mount layers into %s", image), e);
+        }
+    }
+
+    /**
+     * The check is only an optimization, the image is pushed when the registry can not tell.
+     */
+    private boolean isPushed(String image, String imageId) {
+        if (imageId == null) {
+            return false;
+        }
+
+        try {
+            return this.docker.isPushed(image, imageId);
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, String.format("Unable to check whether %s is already pushed", image), e);
+            return false;
+        }
+    }
+
+    /**
+     * Logs what was uploaded during the run, the images that uploaded the most first, as they dominate its duration.
+     */
+    private Set<String> pushedImages(Map<String, PushReport> pushedImages) {
+        final List<PushReport> reports = new ArrayList<>(pushedImages.values());
+        Collections.sort(reports, new Comparator<PushReport>() {
+            @Override
+            public int compare(PushReport report, PushReport other) {
+                return Long.compare(other.getUploadedBytes(), report.getUploadedBytes());
+            }
+        });
+
+        long uploadedBytes = 0;
+        int uploadedLayers = 0;
+        int existingLayers = 0;
+        for (PushReport report : reports) {
+            uploadedBytes += report.getUploadedBytes();
+            uploadedLayers += report.getUploadedLayers();
+            existingLayers += report.getExistingLayers();
+        }
+
+        logger.log(Level.INFO, String.format("Pushed %d images: %d bytes in %d layers, %d layers already existed",
+                reports.size(), uploadedBytes, uploadedLayers, existingLayers));
+        for (PushReport report : reports.subList(0, Math.min(PUSH_SUMMARY_IMAGES, reports.size()))) {
+            final LayerPush slowestLayer = report.getSlowestLayer();
+            logger.log(Level.INFO, String.format("  %s: %d bytes in %d ms%s", report.getImage(), report.getUploadedBytes(),
+                    report.getDurationMillis(), slowestLayer == null ? "" : ", slowest layer " + slowestLayer));
         }
 
-        this.purge(config);
+        return Collections.unmodifiableSet(new HashSet<>(pushedImages.keySet()));
+    }
+
+    public void purge(LieutenantConfig lieutenantConfig, Docker.DockerConfig dockerConfig) {
+        this.purge(discoverApplications(lieutenantConfig, dockerConfig));
     }
 
     public void purge(Config config) {
@@ -110,96 +346,162 @@ public class Lieutenant {
                 this.docker = config.getDockerConfig().build();
             }
 
-            final Set<String> applicationsName = config.getApplicationsName();
-            for (String applicationName : applicationsName) {
+            final TagMatcher tagMatcher = createTagMatcher(config.getLieutenantConfig(), this.git.snapshot());
+
+            final Set<String> imageNames = new HashSet<>();
+            for (String applicationName : config.getApplicationsName()) {
+                imageNames.add(resolveImageName(config.getApplication(applicationName)));
+            }
+
+            // One listing of the daemon for all applications, also used to remove their tags
+            final ImageIndex imageIndex = this.docker.imageIndex();
+
+            final Set<String> tagsToRemove = new HashSet<>();
+            for (String applicationName : config.getApplicationsName()) {
 
                 final Application application = config.getApplication(applicationName);
-                String imageName = resolveImageName(application);
-                final Set<String> currentTags = this.docker.listImages(imageName);
+                final Set<String> currentTags = imageIndex.tags(resolveImageName(application));
 
-                removeExclusionsTags(application, currentTags, config.getLieutenantConfig());
+                if (!currentTags.isEmpty()) {
+                    tagsToRemove.addAll(exclusionsTags(application, currentTags, tagMatcher));
+                }
+            }
 
+            if (!tagsToRemove.isEmpty()) {
+                final RemovalSummary summary = this.docker.remove(tagsToRemove, imageIndex, config.getJobs());
+                logger.log(Level.INFO, String.format("Purge finished: %s", summary));
             }
 
+            if (config.isPurgeRegistry()) {
+                purgeRegistry(config, tagMatcher);
+            }
         }
     }
 
-    private void removeExclusionsTags(Application application, final Set<String> currentTags, LieutenantConfig lieutenantConfig) {
+    /**
+     * Applies the same keep rules to the tags of the registry, deleting the manifests nothing to keep points to.
+     */
+    private void purgeRegistry(Config config, TagMatcher tagMatcher) {
+        int removedTags = 0;
+        int removedManifests = 0;
+        final long start = System.currentTimeMillis();
 
-        // Current commit-id
-        final String currentBranch = this.git.currentBranch();
-        final String currentCommit = this.git.trunkedLatestCommit(currentBranch);
+        for (String applicationName : config.getApplicationsName()) {
 
-        // Live branches
-        final Set<String> branches = this.git.branchList();
+            final Application application = config.getApplication(applicationName);
+            final String imageName = resolveImageName(application);
+            final String pushedName = this.docker.pushedName(imageName);
+            final Registry registry = this.docker.registry(pushedName);
+            final String repository = Registry.repository(pushedName);
 
-        // Current git tags
-        final Set<String> tagList = this.git.tagList(currentCommit);
-        final String imageName = resolveImageName(application);
+            final Set<String> tags = registry.tags(repository);
 
-        Set<String> tagsToRemove = new HashSet<>();
+            final Set<String> currentTags = new HashSet<>();
+            for (String tag : tags) {
+                currentTags.add(imageName + ":" + tag);
+            }
 
-        tag:
-        for (Iterator<String> currentFullTagIterator = currentTags.iterator(); currentFullTagIterator.hasNext(); ) {
-            String currentFullTag = currentFullTagIterator.next();
+            final Set<String> tagsToRemove = new HashSet<>();
+            for (String imageTag : exclusionsTags(application, currentTags, tagMatcher)) {
+                tagsToRemove.add(imageTag.substring(imageName.length() + 1));
+            }
 
-            if (isTagMatched(currentFullTag, imageName, currentCommit)) {
-                continue;
+            if (!tagsToRemove.isEmpty()) {
+                final RemovalSummary summary = registry.remove(repository, tags, tagsToRemove, config.getJobs());
+                removedTags += summary.getRemovedTags();
+                removedManifests += summary.getRemovedImages();
             }
+        }
 
-            if (lieutenantConfig.isWithBranches()) {
-                for (String branch : branches) {
-                    if (isTagMatched(currentFullTag, imageName, branch)) {
-                        continue tag;
-                    }
-                }
+        logger.log(Level.INFO, String.format("Registry purge finished: removed %d tags and %d manifests in %d ms. "
+                + "Run the registry garbage collector to reclaim the storage of their layers.",
+                removedTags, removedManifests, System.currentTimeMillis() - start));
+    }
 
-            }
+    private TagMatcher createTagMatcher(LieutenantConfig lieutenantConfig, GitSnapshot snapshot) {
 
-            if (lieutenantConfig.isWithTags()) {
-                for (String tag : tagList) {
-                    if (isTagMatched(currentFullTag, imageName, tag)) {
-                        continue tag;
-                    }
-                }
-            }
+        // Current commit-id
+        final Set<String> references = new HashSet<>();
+        references.add(snapshot.getRevision());
 
-            // If I arrive here means that tag must be deleted because it is not in current hash, current live branches
-            // or current tags
-            tagsToRemove.add(currentFullTag);
+        // Live branches
+        if (lieutenantConfig.isWithBranches()) {
+            for (String branch : snapshot.getBranches()) {
+                references.add(safeTag(branch));
+            }
         }
 
-        for (String tagToRemove : tagsToRemove) {
-            this.docker.remove(tagToRemove);
+        // Current git tags
+        if (lieutenantConfig.isWithTags()) {
+            for (String tag : snapshot.getTags()) {
+                references.add(safeTag(tag));
+            }
         }
+
+        return new TagMatcher(references);
     }
 
-    private boolean isTagMatched(String currentTag, String image, String tag) {
-        final Pattern pattern = Pattern.compile(image + ":.*(_?)" + tag + "(_?).*");
-        return pattern.matcher(currentTag).matches();
+    private Set<String> exclusionsTags(Application application, final Set<String> currentTags, TagMatcher tagMatcher) {
+
+        final String imageName = resolveImageName(application);
+
+        Set<String> tagsToRemove = new HashSet<>();
+
+        for (String currentFullTag : currentTags) {
+
+            // Tags not referring to current hash, current live branches or current tags must be deleted
+            if (!tagMatcher.matches(imageName, currentFullTag)) {
+                tagsToRemove.add(currentFullTag);
+            }
+        }
+
+        return tagsToRemove;
     }
 
     public Set<String> build(LieutenantConfig lieutenantConfig, Docker.DockerConfig dockerConfig) {
+        return this.build(discoverApplications(lieutenantConfig, dockerConfig));
+    }
+
+    /**
+     * @return configuration of the applications found from the Dockerfiles of the project, as used when there is no
+     * lieutenant.yml.
+     */
+    public Config discoverApplications(LieutenantConfig lieutenantConfig, Docker.DockerConfig dockerConfig) {
 
         Config config = new Config();
         config.setLieutenantConfig(lieutenantConfig);
         config.setDockerConfig(dockerConfig);
 
-        final Set<Path> dockerfiles = getDockerfileLocations();
+        final Set<Path> dockerfiles = getDockerfileLocations(lieutenantConfig);
 
         for (Path dockerfile : dockerfiles) {
             Application application = new Application(autocreateImageName(dockerfile), dockerfile.toString());
             config.addApplication(dockerfile.toString(), application);
         }
 
-        return this.build(config);
+        return config;
     }
 
-    private Set<Path> getDockerfileLocations() {
+    /**
+     * Inside a git repository Dockerfiles are read from the index, which is in memory and ignores untracked build
+     * output. The working tree is walked when not in a git repository, when disabled, or when no Dockerfile is tracked.
+     */
+    private Set<Path> getDockerfileLocations(LieutenantConfig lieutenantConfig) {
         Set<Path> relativeDockerfiles = new HashSet<>();
-        DockerfileFinder dockerfileFinder = new DockerfileFinder(this.home);
+        DockerfileFinder dockerfileFinder = new DockerfileFinder(this.home, lieutenantConfig.getExcludes());
         try {
-            Set<Path> dockerfiles = dockerfileFinder.dockerfiles();
+            Set<Path> dockerfiles = Collections.emptySet();
+
+            if (lieutenantConfig.isDiscoverFromGitIndex() && Git.isGit(this.home)) {
+                if (this.git == null) {
+                    this.git = new Git(this.home);
+                }
+                dockerfiles = dockerfileFinder.dockerfiles(this.git.trackedFiles(DockerfileFinder.DOCKERFILE_PREFIX));
+            }
+
+            if (dockerfiles.isEmpty()) {
+                dockerfiles = dockerfileFinder.dockerfiles();
+            }
 
             final Path path = this.home.toPath();
             for (Path dockerfile : dockerfiles) {
@@ -213,105 +515,424 @@ public class Lieutenant {
     }
 
     public Set<String> build(Config config) {
+        return this.build(config, null, null);
+    }
+
+    /**
+     * Builds only the given applications and the applications built from them.
+     */
+    public Set<String> build(Config config, Set<String> applicationNames) {
+        return this.build(config, null, applicationNames);
+    }
 
+    /**
+     * @return for each application, the files of its build context, any change to them requiring it to be rebuilt.
+     */
+    public Map<String, Set<File>> buildContextFiles(Config config) {
+        final Map<String, Set<File>> buildContextFiles = new HashMap<>();
+        for (String applicationName : config.getApplicationsName()) {
+            final BuildContext buildContext = new BuildContext(new File(this.home, config.getApplication(applicationName).getBuild()));
+
+            final Set<File> files = new HashSet<>();
+            try {
+                for (String file : buildContext.files()) {
+                    files.add(new File(buildContext.getDirectory(), file));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            buildContextFiles.put(applicationName, files);
+        }
+        return buildContextFiles;
+    }
+
+    /**
+     * Builds every application and then, until interrupted, rebuilds the applications whose build context changes.
+     * The same Docker client and Git repository are used for the whole session.
+     */
+    public void watch(LieutenantConfig lieutenantConfig, Docker.DockerConfig dockerConfig) {
+        this.watch(discoverApplications(lieutenantConfig, dockerConfig));
+    }
+
+    public void watch(Config config) {
+        try {
+            this.build(config);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Build failed, waiting for changes", e);
+        }
+
+        try (Watcher watcher = new Watcher(this, this.home, config)) {
+            watcher.run();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Set<String> build(final Config config, final TaskPipeline<PushReport> pushes, final Set<String> selectedApplications) {
         final Set<String> createdImages = new HashSet<>();
-        final Set<String> applicationsName = config.getApplicationsName();
+        for (Set<String> images : buildApplications(config, pushes, selectedApplications).values()) {
+            createdImages.addAll(images);
+        }
+
+        return Collections.unmodifiableSet(createdImages);
+    }
+
+    /**
+     * @return for each built application, the images created for it.
+     */
+    private Map<String, Set<String>> buildApplications(final Config config, final TaskPipeline<PushReport> pushes,
+                                                      final Set<String> selectedApplications) {
 
         if (this.docker == null) {
             this.docker = config.getDockerConfig().build();
         }
 
-        for (String applicationName : applicationsName) {
+        GitSnapshot gitSnapshot = null;
+        if (Git.isGit(this.home)) {
+
+            // Avoid expensive operation and also useful for testing purposes
+            if (this.git == null) {
+                this.git = new Git(this.home);
+            }
+
+            gitSnapshot = this.git.snapshot();
+        } else {
+            logger.log(Level.INFO, "No local git repository found, just building latest");
+        }
+
+        final GitSnapshot snapshot = gitSnapshot;
+        final Map<String, Set<String>> dependencies = resolveDependencies(config);
+        final Set<String> dirtyApplications = snapshot == null
+                ? Collections.<String>emptySet() : dirtyApplications(config, snapshot, dependencies);
+
+        final Set<String> applicationNames;
+        if (selectedApplications == null) {
+            applicationNames = config.getApplicationsName();
+        } else {
+            applicationNames = new HashSet<>(selectedApplications);
+            applicationNames.retainAll(config.getApplicationsName());
+            addDependents(applicationNames, dependencies);
+        }
+
+        final BuildState state = BuildState.load(this.home);
+        final LayerMounter layerMounter = new LayerMounter(this.docker, dependencies);
+        final Map<String, String> daemonImageIds = resolveImageIds(config, applicationNames, snapshot, dirtyApplications);
+
+        final Map<String, Callable<Set<String>>> builds = new HashMap<>();
+        for (final String applicationName : applicationNames) {
 
             final Application application = config.getApplication(applicationName);
+            builds.put(applicationName, new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() {
+                    final Set<String> createdImages = buildApplication(application, dependencies.get(applicationName),
+                            config, snapshot, dirtyApplications.contains(applicationName), state, daemonImageIds);
+
+                    if (pushes != null) {
+                        final Set<String> imagesToPush = imagesToPush(config.getLieutenantConfig(), createdImages);
+                        final Map<String, String> imageIds = localImageIds(imagesToPush);
+                        for (String image : imagesToPush) {
+                            pushes.submit(image, pushTask(image, imageIds.get(image), applicationName,
+                                    config.getLieutenantConfig(), layerMounter));
+                        }
+                    }
 
-            if (!Git.isGit(this.home)) {
+                    return createdImages;
+                }
+            });
+        }
 
-                // If no Git repo exist
-                logger.log(Level.INFO, "No local git repository found, just building latest");
-                createdImages.add(buildImage(this.docker, application, config, "latest"));
+        try {
+            return new TaskRunner("build", config.getJobs(), config.isFailFast()).run(builds, dependencies);
+        } finally {
+            state.save();
+        }
+    }
 
-            } else {
+    /**
+     * Applications built FROM an image produced by another application depend on it, so they are only built once
+     * their parent image is.
+     */
+    private Map<String, Set<String>> resolveDependencies(Config config) {
 
-                // Avoid expensive operation and also useful for testing purposes
-                if (this.git == null) {
-                    this.git = new Git(this.home);
+        final Map<String, Set<String>> applicationsByImage = new HashMap<>();
+        for (String applicationName : config.getApplicationsName()) {
+            final String imageName = resolveImageName(config.getApplication(applicationName));
+
+            Set<String> applications = applicationsByImage.get(imageName);
+            if (applications == null) {
+                applications = new HashSet<>();
+                applicationsByImage.put(imageName, applications);
+            }
+            applications.add(applicationName);
+        }
+
+        final Map<String, Set<String>> dependencies = new HashMap<>();
+        for (String applicationName : config.getApplicationsName()) {
+
+            final Set<String> parents = new HashSet<>();
+            for (String baseImage : config.getApplication(applicationName).getBaseImages(this.home)) {
+                final Set<String> parentApplications = applicationsByImage.get(baseImage);
+                if (parentApplications != null) {
+                    parents.addAll(parentApplications);
                 }
+            }
+            parents.remove(applicationName);
 
-                if (isDirty(this.git)) {
+            if (!parents.isEmpty()) {
+                logger.log(Level.FINE, String.format("%s is built from %s", applicationName, parents));
+                dependencies.put(applicationName, parents);
+            }
+        }
 
-                    logger.log(Level.INFO, "No local git repository found, just building latest");
-                    createdImages.add(buildImage(this.docker, application, config, "latest"));
+        return dependencies;
+    }
 
-                } else {
+    /**
+     * An application is dirty when files of its build directory have local changes, or when any application it is
+     * built from is dirty, as its latest image is then built from uncommitted changes too.
+     */
+    private Set<String> dirtyApplications(Config config, GitSnapshot snapshot, Map<String, Set<String>> dependencies) {
 
-                    final String rev = getRevision(this.git);
+        final Set<String> dirtyApplications = new HashSet<>();
+        if (!snapshot.isDirty()) {
+            return dirtyApplications;
+        }
 
-                    // Skip build if there are no local changes and the commit is already built
-                    if (imageExists(this.docker, application, config, rev) && !config.isForce()) {
+        for (String applicationName : config.getApplicationsName()) {
+            if (snapshot.isDirty(applicationDirectory(config.getApplication(applicationName)))) {
+                dirtyApplications.add(applicationName);
+            }
+        }
 
-                        logger.log(Level.INFO, String.format("Skipping build of %s:%s - image is already built", application.getImage(), rev));
+        addDependents(dirtyApplications, dependencies);
 
-                    } else {
+        logger.log(Level.FINE, String.format("Applications with local changes %s", dirtyApplications));
+        return dirtyApplications;
+    }
 
-                        logger.log(Level.INFO, "Git repo is clean and image can be built.");
+    /**
+     * Adds to the given applications every application built, directly or not, from any of them.
+     */
+    private void addDependents(Set<String> applications, Map<String, Set<String>> dependencies) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Set<String>> dependency : dependencies.entrySet()) {
+                if (!applications.contains(dependency.getKey())
+                        && !Collections.disjoint(dependency.getValue(), applications)) {
+                    applications.add(dependency.getKey());
+                    changed = true;
+                }
+            }
+        }
+    }
 
-                        createdImages.add(buildImage(this.docker, application, config, rev));
-                        if (config.withBranch()) {
-                            createdImages.add(tagImage(this.docker, application, rev, config, getBranch(this.git)));
-                        }
+    private String applicationDirectory(Application application) {
+        final Path directory = this.home.getAbsoluteFile().toPath()
+                .relativize(application.getDockerfile(this.home).getAbsoluteFile().getParentFile().toPath());
+        return directory.toString().replace(File.separatorChar, '/');
+    }
 
-                        if (config.withTags()) {
-                            Set<String> currentTags = currentTags(this.git);
+    /**
+     * Asks the daemon, with a single listing, for the images each application would be skipped for: its commit tag
+     * when clean, its latest tag otherwise. Nothing is asked when builds are forced.
+     */
+    private Map<String, String> resolveImageIds(Config config, Set<String> applicationNames, GitSnapshot snapshot,
+                                                Set<String> dirtyApplications) {
+        if (config.isForce()) {
+            return Collections.emptyMap();
+        }
 
-                            for (String currentTag : currentTags) {
-                                createdImages.add(tagImage(this.docker, application, rev, config, currentTag));
-                            }
-                        }
+        final Set<String> refs = new HashSet<>();
+        for (String applicationName : applicationNames) {
+            final Application application = config.getApplication(applicationName);
+
+            final String tag;
+            if (snapshot == null || snapshot.getRevision() == null || dirtyApplications.contains(applicationName)) {
+                tag = "latest";
+            } else {
+                tag = snapshot.getRevision();
+            }
+            refs.add(resolveImageName(application) + ":" + composeTag(config, tag));
+        }
+
+        return this.docker.resolveImageIds(refs);
+    }
+
+    private Set<String> buildApplication(Application application, Set<String> parents, Config config, GitSnapshot snapshot,
+                                         boolean dirty, BuildState state, Map<String, String> daemonImageIds) {
+
+        final Set<String> createdImages = new HashSet<>();
+
+        if (snapshot == null) {
+
+            // If no Git repo exist
+            createdImages.add(buildLatest(this.docker, application, parents, config, state, daemonImageIds));
+
+        } else {
+
+            if (dirty || snapshot.getRevision() == null) {
+
+                logger.log(Level.INFO, String.format("Local changes found in %s, just building latest", application.getBuild()));
+                createdImages.add(buildLatest(this.docker, application, parents, config, state, daemonImageIds));
+
+            } else {
+
+                final String rev = snapshot.getRevision();
+
+                // Skip build if there are no local changes and the commit is already built
+                if (!config.isForce() && isBuilt(application, config, rev, daemonImageIds)) {
+
+                    logger.log(Level.INFO, String.format("Skipping build of %s:%s - image is already built", application.getImage(), rev));
+
+                } else {
+
+                    logger.log(Level.INFO, "Git repo is clean and image can be built.");
+
+                    final String revImage = resolveImageName(application) + ":" + composeTag(config, rev);
+                    final String imageId = buildImage(this.docker, application, config, rev);
+                    createdImages.add(revImage);
+
+                    final Set<String> references = new LinkedHashSet<>();
+                    if (config.withBranch()) {
+                        references.add(snapshot.getBranch());
+                    }
+
+                    if (config.withTags()) {
+                        references.addAll(snapshot.getTags());
                     }
+                    createdImages.addAll(tagImage(this.docker, application, revImage, imageId, config, references));
                 }
             }
         }
 
-        return Collections.unmodifiableSet(createdImages);
+        return createdImages;
     }
 
-    private String tagImage(Docker docker, Application application, String rev, Config config, String tag) {
+    /**
+     * Tags the image built for the commit with every given reference in a single round of concurrent requests,
+     * addressing it by id so the daemon does not resolve the commit tag again for each of them.
+     */
+    private Set<String> tagImage(Docker docker, Application application, String revImage, String imageId, Config config,
+                                 Set<String> references) {
         final String imageName = resolveImageName(application);
-        final String finalTag = composeTag(config, tag);
-        docker.tag(imageName, rev, finalTag);
 
-        return imageName + ":" + finalTag;
+        final Set<String> imageTags = new LinkedHashSet<>();
+        for (String reference : references) {
+            imageTags.add(imageName + ":" + composeTag(config, reference));
+        }
+        imageTags.remove(revImage);
+
+        if (imageTags.isEmpty()) {
+            return imageTags;
+        }
+
+        docker.tag(imageId == null ? revImage : imageId, imageTags);
+        return imageTags;
     }
 
-    private String buildImage(Docker docker, Application application, Config config, String tag) {
-        final File dockerFileLocationOrFile = new File(this.home, application.getBuild());
+    /**
+     * Builds latest unless an image has already been built from the very same build context on top of the same images
+     * of the applications it is built from, in which case that image is just tagged as latest.
+     */
+    private String buildLatest(Docker docker, Application application, Set<String> parents, Config config,
+                               BuildState state, Map<String, String> daemonImageIds) {
+        final BuildContext buildContext = new BuildContext(new File(this.home, application.getBuild()));
+        final String contextHash = BuildContext.hash(contextHash(buildContext), baseImageIds(config, parents, state));
+
         final String imageName = resolveImageName(application);
-        final String finalTag = composeTag(config, tag);
-        docker.build(dockerFileLocationOrFile, config.isForce(), imageName, finalTag);
+        final String finalTag = composeTag(config, "latest");
+        final String imageTag = imageName + ":" + finalTag;
+
+        if (contextHash != null && !config.isForce()) {
+
+            // Latest recorded as built from this context and still tagged so by the daemon
+            if (contextHash.equals(state.contextHash(imageTag)) && state.verifiedImageId(imageTag, daemonImageIds) != null) {
+                logger.log(Level.INFO, String.format("Skipping build of %s - image is already built from the same context", imageTag));
+                return imageTag;
+            }
+
+            final String imageId = docker.findImageByLabel(BuildContext.CONTEXT_HASH_LABEL, contextHash);
+
+            if (imageId != null) {
+                logger.log(Level.INFO, String.format("Skipping build of %s - image %s is built from the same context", imageTag, imageId));
+                docker.tagById(imageId, imageName, finalTag);
+                state.record(imageTag, imageId, contextHash);
+
+                return imageTag;
+            }
+        }
 
-        return imageName+":"+finalTag;
+        state.record(imageTag, buildImage(docker, application, config, "latest", contextHash), contextHash);
+        return imageTag;
     }
 
-    private Set<String> currentTags(Git git) {
-        return git.tagList(getRevision(git));
+    /**
+     * Parents are built before their children, so their latest images are recorded by now. A parent without recorded
+     * image is identified by its tag.
+     *
+     * @return ids of the latest images of the applications the application is built from, sorted.
+     */
+    private List<String> baseImageIds(Config config, Set<String> parents, BuildState state) {
+        if (parents == null) {
+            return Collections.emptyList();
+        }
+
+        final List<String> baseImageIds = new ArrayList<>();
+        for (String parent : parents) {
+            final String imageTag = resolveImageName(config.getApplication(parent)) + ":" + composeTag(config, "latest");
+            final String imageId = state.imageId(imageTag);
+            baseImageIds.add(imageId == null ? imageTag : imageId);
+        }
+        Collections.sort(baseImageIds);
+        return baseImageIds;
     }
 
-    private String getRevision(Git git) {
-        String branch = git.currentBranch();
-        return git.trunkedLatestCommit(branch);
+    /**
+     * @return id of the built image.
+     */
+    private String buildImage(Docker docker, Application application, Config config, String tag) {
+        return buildImage(docker, application, config, tag,
+                contextHash(new BuildContext(new File(this.home, application.getBuild()))));
     }
 
-    private boolean isDirty(Git git) {
-        return git.isDirty();
+    /**
+     * @return id of the built image.
+     */
+    private String buildImage(Docker docker, Application application, Config config, String tag, String contextHash) {
+        final File dockerFileLocationOrFile = new File(this.home, application.getBuild());
+        final String imageName = resolveImageName(application);
+        final String finalTag = composeTag(config, tag);
+
+        final String imageId;
+        if (contextHash == null) {
+            imageId = docker.build(dockerFileLocationOrFile, config.isForce(), imageName, finalTag);
+        } else {
+            imageId = docker.build(dockerFileLocationOrFile, config.isForce(), imageName, finalTag,
+                    Collections.singletonMap(BuildContext.CONTEXT_HASH_LABEL, contextHash));
+        }
+
+        return imageId;
     }
 
-    private String getBranch(Git git) {
-        return git.currentBranch();
+    /**
+     * @return hash of the build context, null when there is no Dockerfile to hash and the build is left to report it.
+     */
+    private String contextHash(BuildContext buildContext) {
+        if (!buildContext.getDockerfile().isFile()) {
+            return null;
+        }
+
+        try {
+            return buildContext.hash(Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private boolean imageExists(Docker docker, Application application, Config config, String tag) {
-        return docker.imageExists(resolveImageName(application), composeTag(config, tag));
+    private boolean isBuilt(Application application, Config config, String tag, Map<String, String> daemonImageIds) {
+        return daemonImageIds.containsKey(resolveImageName(application) + ":" + composeTag(config, tag));
     }
 
     private String composeTag(Config config, String tag) {
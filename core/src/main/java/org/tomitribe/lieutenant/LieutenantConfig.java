@@ -18,6 +18,9 @@ package org.tomitribe.lieutenant;
 
 import org.apache.commons.lang.text.StrSubstitutor;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public class LieutenantConfig {
@@ -28,6 +31,16 @@ public class LieutenantConfig {
     private boolean withBranches = true;
     private boolean withTags = true;
     private Pattern exclusionImages = null;
+    private int jobs = 1;
+    private int pushJobs = 1;
+    private boolean failFast = true;
+    private boolean pipeline = false;
+    private List<String> excludes = new ArrayList<>();
+    private boolean discoverFromGitIndex = true;
+    private long watchDebounce = 500;
+    private int pushRetries = 3;
+    private long pushRetryDelay = 1000;
+    private boolean purgeRegistry = false;
 
     public boolean isForce() {
         return force;
@@ -81,6 +94,104 @@ public class LieutenantConfig {
         return this.exclusionImages;
     }
 
+    public int getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
+    public int getPushJobs() {
+        return pushJobs;
+    }
+
+    public void setPushJobs(int pushJobs) {
+        this.pushJobs = pushJobs;
+    }
+
+    /**
+     * @return number of times a failed push of an image is retried.
+     */
+    public int getPushRetries() {
+        return pushRetries;
+    }
+
+    public void setPushRetries(int pushRetries) {
+        this.pushRetries = pushRetries;
+    }
+
+    /**
+     * @return milliseconds to wait before retrying a failed push, doubled on every retry.
+     */
+    public long getPushRetryDelay() {
+        return pushRetryDelay;
+    }
+
+    public void setPushRetryDelay(long pushRetryDelay) {
+        this.pushRetryDelay = pushRetryDelay;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * @return patterns, following .gitignore syntax, of the directories not searched for Dockerfiles.
+     */
+    public List<String> getExcludes() {
+        return Collections.unmodifiableList(excludes);
+    }
+
+    public void setExcludes(List<String> excludes) {
+        this.excludes = excludes == null ? new ArrayList<String>() : new ArrayList<>(excludes);
+    }
+
+    /**
+     * @return true if, inside git repositories, Dockerfiles are discovered from the git index instead of walking disk.
+     */
+    public boolean isDiscoverFromGitIndex() {
+        return discoverFromGitIndex;
+    }
+
+    public void setDiscoverFromGitIndex(boolean discoverFromGitIndex) {
+        this.discoverFromGitIndex = discoverFromGitIndex;
+    }
+
+    /**
+     * @return milliseconds without changes the watch mode waits for before rebuilding.
+     */
+    public long getWatchDebounce() {
+        return watchDebounce;
+    }
+
+    public void setWatchDebounce(long watchDebounce) {
+        this.watchDebounce = watchDebounce;
+    }
+
+    /**
+     * @return true if purging also deletes the tags of the registry images are pushed to, not only local ones.
+     */
+    public boolean isPurgeRegistry() {
+        return purgeRegistry;
+    }
+
+    public void setPurgeRegistry(boolean purgeRegistry) {
+        this.purgeRegistry = purgeRegistry;
+    }
+
     public boolean isPatternDefinedForPushingImages() {
         return this.exclusionImages != null;
     }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import org.tomitribe.lieutenant.concurrent.TaskFailedException;
+import org.tomitribe.lieutenant.docker.PushReport;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thrown when applications could not be built or images could not be pushed. The images pushed before or despite the
+ * failures are still reported, so their work is not lost.
+ */
+public class PushFailedException extends TaskFailedException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, PushReport> pushReports;
+
+    /**
+     * @param failures failed applications and images.
+     * @param pushReports report of every image that was pushed.
+     */
+    public PushFailedException(Map<String, Throwable> failures, Map<String, PushReport> pushReports) {
+        super("build and push", failures, pushReports);
+        this.pushReports = Collections.unmodifiableMap(new LinkedHashMap<>(pushReports));
+    }
+
+    public Map<String, PushReport> getPushReports() {
+        return pushReports;
+    }
+
+    /**
+     * @return images pushed despite the failures, as push returns them when nothing fails.
+     */
+    public Set<String> getPushedImages() {
+        return Collections.unmodifiableSet(new HashSet<>(this.pushReports.keySet()));
+    }
+}
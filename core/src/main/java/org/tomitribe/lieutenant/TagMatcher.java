@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides whether an image tag refers to any of the git references (commit, branches, tags) that must be kept.
+ *
+ * Tags built by Lieutenant are composed as {@code [prefix_]reference[_suffix]}, so the tag is split by underscores and
+ * every run of consecutive tokens is looked up in a hash set. Lookups cost is bound by the number of tokens of the tag
+ * instead of by the number of references to keep.
+ */
+class TagMatcher {
+
+    private static final String SEPARATOR = "_";
+
+    private final Set<String> references = new HashSet<>();
+    private int maxTokens = 1;
+
+    TagMatcher(Collection<String> references) {
+        for (String reference : references) {
+            if (reference != null && !reference.isEmpty()) {
+                this.references.add(reference);
+                this.maxTokens = Math.max(this.maxTokens, reference.split(SEPARATOR, -1).length);
+            }
+        }
+    }
+
+    boolean matches(String imageName, String repoTag) {
+        final String repository = imageName + ":";
+        if (!repoTag.startsWith(repository)) {
+            return false;
+        }
+
+        final String[] tokens = repoTag.substring(repository.length()).split(SEPARATOR, -1);
+        final StringBuilder candidate = new StringBuilder();
+
+        for (int start = 0; start < tokens.length; start++) {
+            candidate.setLength(0);
+
+            for (int end = start; end < tokens.length && end - start < this.maxTokens; end++) {
+                if (end > start) {
+                    candidate.append(SEPARATOR);
+                }
+                candidate.append(tokens[end]);
+
+                if (this.references.contains(candidate.toString())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import org.tomitribe.lieutenant.docker.BuildContext;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the build context of every application and rebuilds just the applications whose context changed.
+ *
+ * Changes are debounced: applications are rebuilt once no change has been seen for the configured period, so saving
+ * many files at once ends in a single build. Applications added after the watch started are not discovered.
+ */
+class Watcher implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(Watcher.class.getName());
+
+    // git and Lieutenant write there while building, never part of a build context
+    private static final Set<String> IGNORED_DIRECTORIES = new HashSet<>();
+
+    static {
+        IGNORED_DIRECTORIES.add(".git");
+        IGNORED_DIRECTORIES.add(".lieutenant");
+    }
+
+    private final Lieutenant lieutenant;
+    private final File home;
+    private final Config config;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private Map<String, BuildContext> contexts;
+
+    Watcher(Lieutenant lieutenant, File home, Config config) throws IOException {
+        this.lieutenant = lieutenant;
+        this.home = home;
+        this.config = config;
+        this.contexts = buildContexts();
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        for (BuildContext context : this.contexts.values()) {
+            register(context.getDirectory().toPath());
+        }
+    }
+
+    /**
+     * Rebuilds changed applications until the thread is interrupted or the watcher closed.
+     */
+    void run() throws IOException {
+        logger.log(Level.INFO, String.format("Watching %d applications for changes", this.contexts.size()));
+
+        while (!Thread.currentThread().isInterrupted()) {
+            final Set<Path> changes;
+            try {
+                changes = awaitChanges();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            final Set<String> applications = affectedApplications(changes);
+            if (applications.isEmpty()) {
+                continue;
+            }
+
+            logger.log(Level.INFO, String.format("Changes found in %s, rebuilding", applications));
+            try {
+                this.lieutenant.build(this.config, applications);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Build failed, waiting for changes", e);
+            }
+        }
+    }
+
+    /**
+     * Blocks until something changes and then until nothing else changes during the debounce period.
+     */
+    private Set<Path> awaitChanges() throws InterruptedException, IOException {
+        final Set<Path> changes = new HashSet<>();
+
+        WatchKey key = this.watchService.take();
+        while (key != null) {
+            collect(key, changes);
+            key = this.watchService.poll(this.config.getWatchDebounce(), TimeUnit.MILLISECONDS);
+        }
+
+        return changes;
+    }
+
+    private void collect(WatchKey key, Set<Path> changes) throws IOException {
+        final Path directory = this.directories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                continue;
+            }
+
+            // Events were lost, so anything inside the directory might have changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changes.add(directory);
+                continue;
+            }
+
+            final Path changed = directory.resolve((Path) event.context());
+            changes.add(changed);
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                register(changed);
+            }
+        }
+
+        if (!key.reset()) {
+            this.directories.remove(key);
+        }
+    }
+
+    /**
+     * @return applications having any of the changed files in their build context.
+     */
+    Set<String> affectedApplications(Collection<Path> changes) {
+
+        // A changed .dockerignore changes what belongs to the context
+        this.contexts = buildContexts();
+
+        final Set<String> applications = new TreeSet<>();
+        for (Map.Entry<String, BuildContext> context : this.contexts.entrySet()) {
+            final Path root = context.getValue().getDirectory().toPath();
+
+            for (Path change : changes) {
+                if (change.startsWith(root) && !isIgnored(root.relativize(change))
+                        && (change.equals(root) || context.getValue().includes(relativize(root, change)))) {
+                    applications.add(context.getKey());
+                    break;
+                }
+            }
+        }
+
+        return applications;
+    }
+
+    private Map<String, BuildContext> buildContexts() {
+        final Map<String, BuildContext> buildContexts = new HashMap<>();
+        for (String applicationName : this.config.getApplicationsName()) {
+            final Application application = this.config.getApplication(applicationName);
+            buildContexts.put(applicationName, new BuildContext(new File(this.home, application.getBuild()).getAbsoluteFile()));
+        }
+        return buildContexts;
+    }
+
+    private void register(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!isWatched(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                final WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * A directory is watched while it belongs to the build context of any application.
+     */
+    private boolean isWatched(Path directory) {
+        for (BuildContext context : this.contexts.values()) {
+            final Path root = context.getDirectory().toPath();
+            if (directory.equals(root)) {
+                return true;
+            }
+
+            if (directory.startsWith(root) && !isIgnored(root.relativize(directory))
+                    && !context.isPruned(relativize(root, directory))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIgnored(Path relativePath) {
+        for (Path name : relativePath) {
+            if (IGNORED_DIRECTORIES.contains(name.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String relativize(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Calls a task again when it fails, waiting between attempts an exponentially growing delay with random jitter, so
+ * that many tasks failing at the same time do not hit the remote side again all at once.
+ */
+public class Retry {
+
+    private static final Logger logger = Logger.getLogger(Retry.class.getName());
+
+    private final String name;
+    private final int retries;
+    private final long initialDelay;
+    private final long maxDelay;
+
+    /**
+     * @param retries number of attempts after the first one, 0 to never retry.
+     * @param initialDelay milliseconds to wait before the first retry, doubled on every retry.
+     * @param maxDelay upper bound, in milliseconds, of the delay between attempts.
+     */
+    public Retry(String name, int retries, long initialDelay, long maxDelay) {
+        this.name = name;
+        this.retries = Math.max(0, retries);
+        this.initialDelay = Math.max(0, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+    }
+
+    /**
+     * @throws Exception the failure of the last attempt.
+     */
+    public <V> V call(String task, Callable<V> callable) throws Exception {
+        int attempt = 0;
+        while (true) {
+            try {
+                return callable.call();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (attempt >= this.retries || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+
+                final long delay = delay(attempt);
+                attempt++;
+                logger.log(Level.WARNING, String.format("%s %s failed, retrying in %d ms (%d/%d): %s",
+                        this.name, task, delay, attempt, this.retries, e.getMessage()));
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * @return a delay between half and the whole of the exponential backoff for the given attempt.
+     */
+    long delay(int attempt) {
+        long backoff = this.initialDelay;
+        for (int i = 0; i < attempt && backoff < this.maxDelay; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(this.maxDelay, backoff);
+
+        final long half = backoff / 2;
+        return half + (backoff - half == 0 ? 0 : ThreadLocalRandom.current().nextLong(backoff - half + 1));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.concurrent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TaskFailedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Throwable> failures;
+    private final Map<String, Object> results;
+
+    public TaskFailedException(String name, Map<String, Throwable> failures) {
+        this(name, failures, Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * @param results of the tasks that completed before or despite the failures.
+     */
+    public TaskFailedException(String name, Map<String, Throwable> failures, Map<String, ?> results) {
+        super(String.format("%d %s task(s) failed: %s", failures.size(), name, failures.keySet()),
+                failures.isEmpty() ? null : failures.values().iterator().next());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        this.results = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(results));
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return results of the tasks that did complete, so their work is not lost with the failure.
+     */
+    public Map<String, Object> getResults() {
+        return results;
+    }
+}
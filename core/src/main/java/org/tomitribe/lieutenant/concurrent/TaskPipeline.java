@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.concurrent;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes named tasks in the background as soon as they are submitted, with at most {@code parallelism} of them
+ * running at the same time. Unlike {@link TaskRunner} the set of tasks does not need to be known up front, so
+ * producers can feed the pipeline while they are still working.
+ *
+ * When {@code failFast} is set, submitting a task after a failure throws the failure back to the producer.
+ */
+public class TaskPipeline<V> {
+
+    private static final Logger logger = Logger.getLogger(TaskPipeline.class.getName());
+
+    private final String name;
+    private final boolean failFast;
+    private final ExecutorService executorService;
+
+    private final Map<String, Future<V>> tasks = new LinkedHashMap<>();
+    private final Map<String, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<String, Throwable>());
+
+    public TaskPipeline(String name, int parallelism, boolean failFast) {
+        this.name = name;
+        this.failFast = failFast;
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, parallelism), new NamedThreadFactory(name));
+    }
+
+    public synchronized void submit(final String task, final Callable<V> callable) {
+
+        if (this.failFast && !this.failures.isEmpty()) {
+            throw failure(Collections.<String, V>emptyMap());
+        }
+
+        if (this.tasks.containsKey(task)) {
+            return;
+        }
+
+        this.tasks.put(task, this.executorService.submit(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                try {
+                    return callable.call();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, String.format("%s task %s failed", name, task), e);
+                    failures.put(task, e);
+                    throw e;
+                }
+            }
+        }));
+    }
+
+    /**
+     * Waits until every submitted task has finished and stops accepting new ones.
+     *
+     * @throws TaskFailedException if any of the tasks failed.
+     */
+    public Map<String, V> await() {
+
+        final Map<String, V> results = new HashMap<>();
+
+        try {
+            for (Map.Entry<String, Future<V>> task : snapshot().entrySet()) {
+                // after a failure only the tasks already done are collected, the others being cancelled
+                if (this.failFast && !this.failures.isEmpty() && !task.getValue().isDone()) {
+                    continue;
+                }
+
+                try {
+                    results.put(task.getKey(), task.getValue().get());
+                } catch (ExecutionException e) {
+                    this.failures.put(task.getKey(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Interrupted while waiting for %s tasks", this.name), e);
+        } finally {
+            cancel();
+        }
+
+        if (!this.failures.isEmpty()) {
+            throw failure(results);
+        }
+
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * @return results of the tasks that already finished successfully, without waiting for the others.
+     */
+    public Map<String, V> completed() {
+        final Map<String, V> results = new HashMap<>();
+
+        for (Map.Entry<String, Future<V>> task : snapshot().entrySet()) {
+            final Future<V> future = task.getValue();
+            if (!future.isDone() || future.isCancelled()) {
+                continue;
+            }
+
+            try {
+                results.put(task.getKey(), future.get());
+            } catch (ExecutionException e) {
+                // failed tasks have no result
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(String.format("Interrupted while collecting %s tasks", this.name), e);
+            }
+        }
+
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * Stops accepting tasks and interrupts the running ones.
+     */
+    public void cancel() {
+        this.executorService.shutdownNow();
+    }
+
+    private synchronized Map<String, Future<V>> snapshot() {
+        return new LinkedHashMap<>(this.tasks);
+    }
+
+    private TaskFailedException failure(Map<String, V> results) {
+        synchronized (this.failures) {
+            return new TaskFailedException(this.name, this.failures, results);
+        }
+    }
+}
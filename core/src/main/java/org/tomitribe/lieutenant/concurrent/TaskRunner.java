@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a set of named tasks with at most {@code parallelism} of them in flight.
+ *
+ * Tasks might depend on other tasks, in which case they are started as soon as all of them have finished and,
+ * unless dependencies only order them, are skipped if any of them fails.
+ *
+ * With a parallelism of one tasks are executed in the calling thread, one after the other.
+ * When {@code failFast} is set no new task is started after the first failure and running ones are cancelled,
+ * otherwise every task is executed and all failures are reported together.
+ */
+public class TaskRunner {
+
+    private static final Logger logger = Logger.getLogger(TaskRunner.class.getName());
+
+    private static final Executor CALLER_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final String name;
+    private final int parallelism;
+    private final boolean failFast;
+
+    public TaskRunner(String name, int parallelism, boolean failFast) {
+        this.name = name;
+        this.parallelism = Math.max(1, parallelism);
+        this.failFast = failFast;
+    }
+
+    public <V> Map<String, V> run(final Map<String, ? extends Callable<V>> tasks) {
+        return run(tasks, Collections.<String, Set<String>>emptyMap());
+    }
+
+    /**
+     * @param dependencies for each task the name of the tasks that must be finished before it can start.
+     * @throws IllegalArgumentException if dependencies contain a cycle.
+     */
+    public <V> Map<String, V> run(final Map<String, ? extends Callable<V>> tasks, final Map<String, Set<String>> dependencies) {
+        return run(tasks, dependencies, true);
+    }
+
+    /**
+     * @param dependencies for each task the name of the tasks that must be finished before it can start.
+     * @param skipDependents whether tasks depending on a failed task are skipped, or just started once all their
+     * dependencies are finished whatever their outcome, the dependencies then only ordering the tasks.
+     * @throws IllegalArgumentException if dependencies contain a cycle.
+     */
+    public <V> Map<String, V> run(final Map<String, ? extends Callable<V>> tasks, final Map<String, Set<String>> dependencies,
+                                  final boolean skipDependents) {
+
+        final Map<String, V> results = new HashMap<>();
+        final Map<String, Throwable> failures = new LinkedHashMap<>();
+
+        if (tasks.isEmpty()) {
+            return Collections.unmodifiableMap(results);
+        }
+
+        final Map<String, Integer> pendingDependencies = new HashMap<>();
+        final Map<String, Set<String>> dependents = new HashMap<>();
+        final Deque<String> ready = new ArrayDeque<>();
+
+        for (String task : tasks.keySet()) {
+            int pending = 0;
+            final Set<String> taskDependencies = dependencies.get(task);
+            if (taskDependencies != null) {
+                for (String dependency : taskDependencies) {
+                    if (tasks.containsKey(dependency) && !dependency.equals(task)) {
+                        pending++;
+                        dependentsOf(dependents, dependency).add(task);
+                    }
+                }
+            }
+
+            pendingDependencies.put(task, pending);
+            if (pending == 0) {
+                ready.add(task);
+            }
+        }
+
+        checkAcyclic(tasks.keySet(), ready, pendingDependencies, dependents);
+
+        final ExecutorService executorService = createExecutorService(tasks.size());
+        final CompletionService<V> completionService = new ExecutorCompletionService<>(
+                executorService == null ? CALLER_THREAD : executorService);
+
+        final Map<Future<V>, String> running = new HashMap<>();
+
+        try {
+            while (!ready.isEmpty() || !running.isEmpty()) {
+
+                while (!ready.isEmpty() && running.size() < this.parallelism && !shouldStop(failures)) {
+                    final String task = ready.poll();
+                    running.put(completionService.submit(tasks.get(task)), task);
+                }
+
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                final Future<V> done = completionService.take();
+                final String task = running.remove(done);
+
+                try {
+                    results.put(task, done.get());
+                    release(task, dependents, pendingDependencies, ready);
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, String.format("%s task %s failed", this.name, task), e.getCause());
+                    failures.put(task, e.getCause());
+
+                    if (shouldStop(failures)) {
+                        cancel(running.keySet());
+                        break;
+                    }
+
+                    if (skipDependents) {
+                        skipDependents(task, dependents, failures);
+                    } else {
+                        release(task, dependents, pendingDependencies, ready);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(running.keySet());
+            throw new IllegalStateException(String.format("Interrupted while running %s tasks", this.name), e);
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new TaskFailedException(this.name, failures, results);
+        }
+
+        return Collections.unmodifiableMap(results);
+    }
+
+    private void release(String finishedTask, Map<String, Set<String>> dependents, Map<String, Integer> pendingDependencies,
+                         Deque<String> ready) {
+        for (String dependent : dependentsOf(dependents, finishedTask)) {
+            final int pending = pendingDependencies.get(dependent) - 1;
+            pendingDependencies.put(dependent, pending);
+            if (pending == 0) {
+                ready.add(dependent);
+            }
+        }
+    }
+
+    private void skipDependents(String failedTask, Map<String, Set<String>> dependents, Map<String, Throwable> failures) {
+        for (String dependent : dependentsOf(dependents, failedTask)) {
+            if (!failures.containsKey(dependent)) {
+                logger.log(Level.WARNING, String.format("Skipping %s task %s because %s failed", this.name, dependent, failedTask));
+                failures.put(dependent, new IllegalStateException(String.format("%s depends on %s which failed", dependent, failedTask)));
+                skipDependents(dependent, dependents, failures);
+            }
+        }
+    }
+
+    private void checkAcyclic(Set<String> tasks, Deque<String> ready, Map<String, Integer> pendingDependencies,
+                              Map<String, Set<String>> dependents) {
+        final Map<String, Integer> pending = new HashMap<>(pendingDependencies);
+        final Deque<String> visit = new ArrayDeque<>(ready);
+        final Set<String> unresolved = new TreeSet<>(tasks);
+
+        while (!visit.isEmpty()) {
+            final String task = visit.poll();
+            unresolved.remove(task);
+
+            for (String dependent : dependentsOf(dependents, task)) {
+                final int remaining = pending.get(dependent) - 1;
+                pending.put(dependent, remaining);
+                if (remaining == 0) {
+                    visit.add(dependent);
+                }
+            }
+        }
+
+        if (!unresolved.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Cyclic dependencies between %s tasks %s", this.name, unresolved));
+        }
+    }
+
+    private Set<String> dependentsOf(Map<String, Set<String>> dependents, String task) {
+        Set<String> taskDependents = dependents.get(task);
+        if (taskDependents == null) {
+            taskDependents = new HashSet<>();
+            dependents.put(task, taskDependents);
+        }
+        return taskDependents;
+    }
+
+    private boolean shouldStop(Map<String, Throwable> failures) {
+        return this.failFast && !failures.isEmpty();
+    }
+
+    private <V> void cancel(Iterable<Future<V>> futures) {
+        for (Future<V> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private ExecutorService createExecutorService(int numberOfTasks) {
+        final int threads = Math.min(this.parallelism, numberOfTasks);
+        if (threads <= 1) {
+            return null;
+        }
+
+        return Executors.newFixedThreadPool(threads, new NamedThreadFactory(this.name));
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.tomitribe.lieutenant.concurrent.TaskRunner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Files sent to the daemon to build an image: the directory of the Dockerfile minus what its .dockerignore excludes.
+ */
+public class BuildContext {
+
+    /**
+     * Label stamped on built images with the hash of their build context.
+     */
+    public static final String CONTEXT_HASH_LABEL = "org.tomitribe.lieutenant.context-hash";
+
+    private static final String DEFAULT_DOCKERFILE = "Dockerfile";
+    // where Lieutenant keeps its own state, never part of an image
+    private static final String LIEUTENANT_DIRECTORY = ".lieutenant";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FILE_MODE = 0100644;
+    private static final int EXECUTABLE_FILE_MODE = 0100755;
+    private static final int SYMLINK_MODE = 0120777;
+
+    private final File dockerfile;
+    private final File directory;
+    private final DockerIgnore dockerIgnore;
+
+    public BuildContext(File dockerFileLocationOrFile) {
+        if (dockerFileLocationOrFile.isDirectory()) {
+            this.dockerfile = new File(dockerFileLocationOrFile, DEFAULT_DOCKERFILE);
+        } else {
+            this.dockerfile = dockerFileLocationOrFile;
+        }
+        this.directory = this.dockerfile.getAbsoluteFile().getParentFile();
+        this.dockerIgnore = DockerIgnore.read(this.directory);
+    }
+
+    public File getDockerfile() {
+        return dockerfile;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return paths, relative to the context directory and sorted, of the files sent to the daemon. The Dockerfile
+     * and the .dockerignore are always sent, as Docker does.
+     */
+    public List<String> files() throws IOException {
+        final Path root = this.directory.toPath();
+        final String dockerfileName = this.dockerfile.getName();
+        final List<String> files = new ArrayList<>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && (dockerIgnore.isPrunable(relativize(root, dir))
+                        || dir.equals(root.resolve(LIEUTENANT_DIRECTORY)))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                final String relativePath = relativize(root, file);
+                if (dockerfileName.equals(relativePath) || DockerIgnore.FILENAME.equals(relativePath)
+                        || !dockerIgnore.isExcluded(relativePath)) {
+                    files.add(relativePath);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * @param relativePath path, relative to the context directory, of a file or directory.
+     * @return true if the path is part of what {@link #files()} sends to the daemon.
+     */
+    public boolean includes(String relativePath) {
+        if (relativePath.equals(LIEUTENANT_DIRECTORY) || relativePath.startsWith(LIEUTENANT_DIRECTORY + "/")) {
+            return false;
+        }
+
+        return this.dockerfile.getName().equals(relativePath) || DockerIgnore.FILENAME.equals(relativePath)
+                || !this.dockerIgnore.isExcluded(relativePath);
+    }
+
+    /**
+     * @param relativeDirectory path, relative to the context directory, of a directory.
+     * @return true if nothing inside the directory is part of the context.
+     */
+    public boolean isPruned(String relativeDirectory) {
+        return relativeDirectory.equals(LIEUTENANT_DIRECTORY) || this.dockerIgnore.isPrunable(relativeDirectory);
+    }
+
+    /**
+     * Computes a SHA-256 hash of the context, files being hashed concurrently. Two contexts with the same files,
+     * contents and executable flags get the same hash whatever their location and modification times. Symbolic links
+     * are hashed by their target, as they are archived.
+     */
+    public String hash(int parallelism) throws IOException {
+        final Map<String, Callable<byte[]>> hashes = new LinkedHashMap<>();
+        for (final String relativePath : files()) {
+            hashes.put(relativePath, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    final Path path = directory.toPath().resolve(relativePath);
+                    if (Files.isSymbolicLink(path)) {
+                        return digest().digest(linkTarget(path).getBytes(StandardCharsets.UTF_8));
+                    }
+                    return hash(path.toFile());
+                }
+            });
+        }
+
+        final Map<String, byte[]> fileHashes = new TaskRunner("hash", parallelism, true).run(hashes);
+
+        final MessageDigest digest = digest();
+        // the Dockerfile name matters as several Dockerfiles might share the same directory
+        digest.update(this.dockerfile.getName().getBytes(StandardCharsets.UTF_8));
+        for (String relativePath : hashes.keySet()) {
+            digest.update((byte) '\n');
+            digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) fileType(this.directory.toPath().resolve(relativePath)));
+            digest.update(fileHashes.get(relativePath));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * An image depends on the images it is built from as much as on its context, so images built from the same context
+     * on top of different base images must not be taken for one another.
+     *
+     * @return hash of a context combined with the ids of the base images, the context hash itself when there are none
+     * or null when the context hash is null.
+     */
+    public static String hash(String contextHash, List<String> baseImageIds) {
+        if (contextHash == null || baseImageIds.isEmpty()) {
+            return contextHash;
+        }
+
+        final MessageDigest digest = digest();
+        digest.update(contextHash.getBytes(StandardCharsets.UTF_8));
+        for (String baseImageId : baseImageIds) {
+            digest.update((byte) '\n');
+            digest.update(baseImageId.getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Streams the context as a tar archive written, while it is read, by a background thread. Nothing is written to
+     * disk and the daemon can start receiving the context before it is fully archived.
+     *
+     * @see #write(OutputStream, Map)
+     */
+    public InputStream stream(final Map<String, String> labels) throws IOException {
+        final ContextInputStream in = new ContextInputStream();
+        final PipedOutputStream out = new PipedOutputStream(in);
+
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(out, labels);
+                } catch (IOException | RuntimeException e) {
+                    in.failure = e;
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // reader already gone
+                    }
+                }
+            }
+        }, "lieutenant-context-" + this.directory.getName());
+        writer.setDaemon(true);
+        writer.start();
+
+        return in;
+    }
+
+    /**
+     * Writes the context as a tar archive, the Dockerfile being stored as "Dockerfile" with given labels added at its
+     * end. A file named Dockerfile living next to another Dockerfile being built is replaced in the archive.
+     *
+     * The archive is reproducible: entries are sorted by path, and modification times and owners are zeroed, so the
+     * same context always gives the same bytes. Symbolic links are archived as links, as Docker does, not followed.
+     */
+    public void write(OutputStream out, Map<String, String> labels) throws IOException {
+        final List<String> entries = new ArrayList<>(files());
+        if (!entries.contains(DEFAULT_DOCKERFILE)) {
+            entries.add(DEFAULT_DOCKERFILE);
+        }
+        Collections.sort(entries);
+
+        final TarArchiveOutputStream tar = new TarArchiveOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+        for (String relativePath : entries) {
+            if (DEFAULT_DOCKERFILE.equals(relativePath)) {
+                final byte[] dockerfileContent = labelledDockerfile(labels);
+                tar.putArchiveEntry(entry(relativePath, dockerfileContent.length, false));
+                tar.write(dockerfileContent);
+            } else if (Files.isSymbolicLink(this.directory.toPath().resolve(relativePath))) {
+                tar.putArchiveEntry(linkEntry(relativePath, linkTarget(this.directory.toPath().resolve(relativePath))));
+            } else {
+                final File file = new File(this.directory, relativePath);
+                tar.putArchiveEntry(entry(relativePath, file.length(), file.canExecute()));
+                Files.copy(file.toPath(), tar);
+            }
+            tar.closeArchiveEntry();
+        }
+
+        // the given stream is left open
+        tar.finish();
+        tar.flush();
+    }
+
+    private static TarArchiveEntry entry(String name, long size, boolean executable) {
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(size);
+        entry.setMode(executable ? EXECUTABLE_FILE_MODE : FILE_MODE);
+        entry.setModTime(0);
+        entry.setIds(0, 0);
+        entry.setNames("", "");
+        return entry;
+    }
+
+    private static TarArchiveEntry linkEntry(String name, String target) {
+        final TarArchiveEntry entry = new TarArchiveEntry(name, TarArchiveEntry.LF_SYMLINK);
+        entry.setLinkName(target);
+        entry.setMode(SYMLINK_MODE);
+        entry.setModTime(0);
+        entry.setIds(0, 0);
+        entry.setNames("", "");
+        return entry;
+    }
+
+    private static String linkTarget(Path link) throws IOException {
+        return Files.readSymbolicLink(link).toString().replace(File.separatorChar, '/');
+    }
+
+    private static char fileType(Path path) {
+        if (Files.isSymbolicLink(path)) {
+            return 'l';
+        }
+        return path.toFile().canExecute() ? 'x' : '-';
+    }
+
+    private byte[] labelledDockerfile(Map<String, String> labels) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Files.copy(this.dockerfile.toPath(), content);
+
+        final StringBuilder instructions = new StringBuilder("\n");
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            instructions.append(String.format("LABEL \"%s\"=\"%s\"\n", label.getKey(), label.getValue()));
+        }
+        content.write(instructions.toString().getBytes(StandardCharsets.UTF_8));
+
+        return content.toByteArray();
+    }
+
+    private static byte[] hash(File file) throws IOException {
+        final MessageDigest digest = digest();
+        final byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static String relativize(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Reports, once the archive is read, the failure that made the writer stop early.
+     */
+    private static class ContextInputStream extends PipedInputStream {
+
+        private volatile Exception failure;
+
+        ContextInputStream() {
+            super(BUFFER_SIZE);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            final int read = super.read();
+            if (read == -1) {
+                checkFailure();
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read == -1) {
+                checkFailure();
+            }
+            return read;
+        }
+
+        private void checkFailure() throws IOException {
+            if (this.failure instanceof IOException) {
+                throw (IOException) this.failure;
+            }
+            if (this.failure != null) {
+                throw new IOException("Failed to archive build context", this.failure);
+            }
+        }
+    }
+}
@@ -16,23 +16,32 @@
  */
 package org.tomitribe.lieutenant.docker;
 
+import com.github.dockerjava.api.ConflictException;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.NotFoundException;
 import com.github.dockerjava.api.command.PushImageCmd;
 import com.github.dockerjava.api.model.Image;
-import com.github.dockerjava.core.DockerClientBuilder;
 import com.github.dockerjava.core.DockerClientConfig;
 import com.github.dockerjava.core.SSLConfig;
-import com.github.dockerjava.core.command.BuildImageResultCallback;
-import com.github.dockerjava.core.command.PushImageResultCallback;
+import org.tomitribe.lieutenant.concurrent.TaskRunner;
 
 import java.io.File;
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,42 +49,184 @@ public class Docker {
 
     private final static Logger log = Logger.getLogger(Docker.class.getName());
 
+    /**
+     * Tagging only touches the daemon metadata, so many tags can be applied concurrently.
+     */
+    private static final int MAX_TAG_JOBS = 16;
+
     private DockerClientConfig dockerClientConfig;
     protected DockerClient dockerClient;
+    private final ConcurrentMap<String, Registry> registries = new ConcurrentHashMap<>();
 
-    private Docker(DockerClientConfig dockerClientConfig) {
+    private Docker(DockerClientConfig dockerClientConfig, DockerClient dockerClient) {
         this.dockerClientConfig = dockerClientConfig;
-
-        this.dockerClient = DockerClientBuilder.getInstance(this.dockerClientConfig)
-                .build();
+        this.dockerClient = dockerClient;
     }
 
-    public void push(final String image) {
+    /**
+     * @return what was uploaded for each layer of the image, and how long it took.
+     */
+    public PushReport push(final String image) {
+        log.log(Level.INFO, String.format("Pushing Image %s", image));
 
-        String finalImageName = image;
-        if (image.indexOf('/') < 0) {
-            finalImageName = this.dockerClientConfig.getUsername() + "/" + image;
-        }
+        final long start = System.currentTimeMillis();
+        final PushProgress progress = new PushProgress();
+        final String digest = pushAsync(image, progress).await();
 
-        final PushImage pushImage = PushImage.valueOf(finalImageName);
-        log.log(Level.INFO, String.format("Pushing Image %s", image));
+        final PushReport report = progress.report(image, digest, System.currentTimeMillis() - start);
+        log.log(Level.INFO, report.toString());
+        return report;
+    }
+
+    /**
+     * Starts pushing the image without waiting for it, progress of every layer being reported to the listener.
+     *
+     * @return the push, completed with the digest of the pushed manifest when the daemon reports it.
+     */
+    public DockerOperation<String> pushAsync(final String image, DockerListener listener) {
+
+        final PushImage pushImage = PushImage.valueOf(pushedName(image));
         final PushImageCmd pushImageCmd = this.dockerClient.pushImageCmd(pushImage.getName());
         if (pushImage.getTag() != null && !"".equals(pushImage.getTag())) {
             pushImageCmd.withTag(pushImage.getTag());
         }
-        pushImageCmd.exec(new PushImageResultCallback()).awaitSuccess();
-        log.log(Level.INFO, String.format("Pushed Image %s", image));
 
+        final DockerOperation<String> operation = new DockerOperation<>(image, null);
+        pushImageCmd.exec(new OperationCallback.Push(operation, listener));
+        return operation;
+    }
+
+    /**
+     * Tells whether the registry already holds the very same image under the same tag, in which case pushing it again
+     * would upload nothing.
+     *
+     * The daemon does not expose the digests of the manifests it pushed, so the manifest of the registry is read
+     * instead and the image it describes compared with the local one.
+     *
+     * @param imageId id of the local image, as resolved by {@link #resolveImageIds(Collection)}.
+     */
+    public boolean isPushed(String image, String imageId) {
+        final String finalImageName = pushedName(image);
+        final String tag = Registry.tag(finalImageName);
+
+        final String pushedImageId = registry(finalImageName).imageId(Registry.repository(finalImageName), tag);
+        log.log(Level.FINER, String.format("Image %s is %s locally and %s in the registry", image, imageId, pushedImageId));
+        return imageId.equals(pushedImageId);
+    }
+
+    /**
+     * @return name the image is pushed under, images without a namespace being pushed to the one of the configured
+     * user.
+     */
+    public String pushedName(String image) {
+        if (image.indexOf('/') < 0) {
+            return this.dockerClientConfig.getUsername() + "/" + image;
+        }
+        return image;
+    }
+
+    /**
+     * @return id of the built image.
+     */
+    public String build(File dockerFileLocationOrFile, boolean noCache, String image, String tag) {
+        return build(dockerFileLocationOrFile, noCache, image, tag, Collections.<String, String>emptyMap());
     }
 
-    public void build(File dockerFileLocationOrFile, boolean noCache, String image, String tag) {
-        log.log(Level.INFO, String.format("Building and tagging Image %s:%s", image, tag));
+    /**
+     * Builds the image with given labels added to it.
+     *
+     * @return id of the built image.
+     * @see #buildAsync(File, boolean, String, String, Map, DockerListener)
+     */
+    public String build(File dockerFileLocationOrFile, boolean noCache, String image, String tag, Map<String, String> labels) {
+        if (labels.isEmpty()) {
+            log.log(Level.INFO, String.format("Building and tagging Image %s:%s", image, tag));
+        } else {
+            log.log(Level.INFO, String.format("Building and tagging Image %s:%s with labels %s", image, tag, labels));
+        }
 
-        final String id = this.dockerClient.buildImageCmd(dockerFileLocationOrFile)
-                .withNoCache(noCache)
-                .withTag(getTag(image, tag)).exec(new BuildImageResultCallback()).awaitImageId();
+        final String id = buildAsync(dockerFileLocationOrFile, noCache, image, tag, labels, DockerListener.NONE).await();
 
         log.log(Level.INFO, String.format("Built Image %s:%s with id %s", image, tag, id));
+        return id;
+    }
+
+    /**
+     * Starts building the image without waiting for it, build steps being reported to the listener. The build context
+     * is archived by Lieutenant, honoring its .dockerignore, and streamed to the daemon while being archived. As
+     * docker-java can not set labels, the archived Dockerfile carries the matching LABEL instructions.
+     *
+     * @return the build, completed with the id of the built image.
+     */
+    public DockerOperation<String> buildAsync(File dockerFileLocationOrFile, boolean noCache, String image, String tag,
+                                              Map<String, String> labels, DockerListener listener) {
+        final InputStream context;
+        try {
+            context = new BuildContext(dockerFileLocationOrFile).stream(labels);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        final DockerOperation<String> operation = new DockerOperation<>(getTag(image, tag), context);
+        try {
+            this.dockerClient.buildImageCmd(context)
+                    .withNoCache(noCache)
+                    .withTag(getTag(image, tag)).exec(new OperationCallback.Build(operation, listener));
+        } catch (RuntimeException e) {
+            operation.fail(e);
+            throw e;
+        }
+
+        return operation;
+    }
+
+    /**
+     * @return id of an image carrying given label, null if there is none.
+     */
+    public String findImageByLabel(String label, String value) {
+
+        log.log(Level.FINER, String.format("Finding image labelled %s=%s", label, value));
+
+        final List<Image> images = this.dockerClient.listImagesCmd()
+                .withFilters(String.format("{\"label\":[\"%s=%s\"]}", label, value))
+                .exec();
+
+        if (images == null || images.isEmpty()) {
+            return null;
+        }
+        return images.get(0).getId();
+    }
+
+    public void tagById(String imageId, String image, String tag) {
+        log.log(Level.INFO, String.format("Tagging image %s as %s:%s", imageId, image, tag));
+
+        this.dockerClient.tagImageCmd(imageId, image, tag).withForce(true).exec();
+    }
+
+    /**
+     * Applies every target reference to the image at once, each one being a separate request to the daemon.
+     *
+     * @param imageId id of the image, or any reference the daemon resolves to it.
+     * @param targets image:tag references to create or move onto the image.
+     * @throws org.tomitribe.lieutenant.concurrent.TaskFailedException if any tag fails, once all others are done.
+     */
+    public void tag(final String imageId, Collection<String> targets) {
+        final Map<String, Callable<Void>> tags = new LinkedHashMap<>();
+        for (final String target : targets) {
+            // the tag follows the last ':' after the last '/', a registry host might have a port
+            final String repository = ImageIndex.repository(target);
+            final String tag = repository.equals(target) ? "latest" : target.substring(repository.length() + 1);
+
+            tags.put(target, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    tagById(imageId, repository, tag);
+                    return null;
+                }
+            });
+        }
+
+        new TaskRunner("tag", Math.min(tags.size(), MAX_TAG_JOBS), false).run(tags);
     }
 
     public void tag(String image, String origin, String tag) {
@@ -85,44 +236,58 @@ public class Docker {
     }
 
     public Set<String> listImages(String imageName) {
-        log.log(Level.INFO, String.format("Finding image %s", imageName));
-
-        Set<Image> matchImages = new HashSet<>();
+        return listImages(Collections.singleton(imageName)).get(imageName);
+    }
 
-        final List<Image> images = this.dockerClient.listImagesCmd().withShowAll(false).exec();
-        for (Image currentImage : images) {
-            final String[] repoTags = currentImage.getRepoTags();
+    /**
+     * Finds the tags of several images with a single listing of the daemon.
+     *
+     * @return for each image name, all its repo tags.
+     */
+    public Map<String, Set<String>> listImages(Collection<String> imageNames) {
+        log.log(Level.INFO, String.format("Finding images %s", imageNames));
 
-            for (String repoTag : repoTags) {
-                if (getImageTag(repoTag).image.equals(imageName)) {
-                    matchImages.add(currentImage);
-                }
-            }
-        }
+        final ImageIndex imageIndex = imageIndex();
 
-        final Set<String> currentTags = new HashSet<>();
-        for (Image image : matchImages) {
-            currentTags.addAll(Arrays.asList(image.getRepoTags()));
+        final Map<String, Set<String>> currentTags = new HashMap<>();
+        for (String imageName : imageNames) {
+            currentTags.put(imageName, imageIndex.tags(imageName));
         }
-        return Collections.unmodifiableSet(currentTags);
+        return Collections.unmodifiableMap(currentTags);
     }
 
-    private DockerConfig.ImageTag getImageTag(String tag) {
-        return DockerConfig.ImageTag.fromRepoTag(tag);
+    public ImageIndex imageIndex() {
+        return new ImageIndex(this.dockerClient.listImagesCmd().withShowAll(false).exec());
     }
 
     public String imageId(String image, String tag) {
 
         log.log(Level.FINER, String.format("Finding image %s:%s", image, tag));
 
-        final List<Image> images = this.dockerClient.listImagesCmd().exec();
-        for (Image currentImage : images) {
-            if (isImagedTagged(currentImage, image, tag)) {
-                return currentImage.getId();
+        final String imageTag = getTag(image, tag);
+        return resolveImageIds(Collections.singleton(imageTag)).get(imageTag);
+    }
+
+    /**
+     * Resolves the ids of several images with a single listing of the daemon. References without tag refer to latest.
+     *
+     * @return id of every reference found, references unknown by the daemon are not in the map.
+     */
+    public Map<String, String> resolveImageIds(Collection<String> refs) {
+
+        log.log(Level.FINER, String.format("Resolving images %s", refs));
+
+        final ImageIndex imageIndex = imageIndex();
+
+        final Map<String, String> imageIds = new HashMap<>();
+        for (String ref : refs) {
+            final String imageTag = ImageIndex.repository(ref).equals(ref) ? getTag(ref, "latest") : ref;
+            final String imageId = imageIndex.imageId(imageTag);
+            if (imageId != null) {
+                imageIds.put(ref, imageId);
             }
         }
-
-        return null;
+        return Collections.unmodifiableMap(imageIds);
     }
 
     public boolean imageExists(String image, String tag) {
@@ -157,25 +322,154 @@ public class Docker {
         }
     }
 
-    private boolean isImagedTagged(Image currentImage, String image, String tag) {
-        final String[] repoTags = currentImage.getRepoTags();
-        Arrays.sort(repoTags);
-        int index = Arrays.binarySearch(repoTags, getTag(image, tag));
+    /**
+     * Removes several repo tags using up to parallelism concurrent requests.
+     *
+     * Tags are grouped by the image they point to. When a group holds every tag of its image, the image is removed
+     * by id in one request instead of untagging it tag by tag. Tags of the same image are never removed concurrently.
+     *
+     * @param imageIndex listing of the daemon the repo tags were found in, so the daemon is not listed again.
+     * @throws org.tomitribe.lieutenant.concurrent.TaskFailedException if any removal fails, once all others are done.
+     */
+    public RemovalSummary remove(Collection<String> repoTags, ImageIndex imageIndex, int parallelism) {
+        final long start = System.currentTimeMillis();
+
+        if (repoTags.isEmpty()) {
+            return new RemovalSummary(0, 0, 0);
+        }
 
-        if (index > -1) {
-            return true;
-        } else {
-            return false;
+        final Map<String, Set<String>> tagsByImage = new LinkedHashMap<>();
+        for (String repoTag : repoTags) {
+            String imageId = imageIndex.imageId(repoTag);
+            if (imageId == null) {
+                // Not known by the daemon anymore, removing it on its own just reports it as already removed.
+                imageId = repoTag;
+            }
+            Set<String> tags = tagsByImage.get(imageId);
+            if (tags == null) {
+                tags = new LinkedHashSet<>();
+                tagsByImage.put(imageId, tags);
+            }
+            tags.add(repoTag);
+        }
+
+        final AtomicInteger removedTags = new AtomicInteger();
+        final AtomicInteger removedImages = new AtomicInteger();
+
+        final Map<String, Callable<Void>> removals = new LinkedHashMap<>();
+        for (final Map.Entry<String, Set<String>> group : tagsByImage.entrySet()) {
+            final String imageId = group.getKey();
+            final Set<String> tags = group.getValue();
+            final boolean wholeImage = tags.equals(imageIndex.tagsOfImage(imageId));
+
+            removals.put(imageId, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    if (wholeImage) {
+                        removeImage(imageId, tags);
+                        removedImages.incrementAndGet();
+                    } else {
+                        for (String tag : tags) {
+                            remove(tag);
+                        }
+                    }
+                    removedTags.addAndGet(tags.size());
+                    return null;
+                }
+            });
+        }
+
+        new TaskRunner("remove", parallelism, false).run(removals);
+
+        final RemovalSummary summary = new RemovalSummary(removedTags.get(), removedImages.get(),
+                System.currentTimeMillis() - start);
+        log.log(Level.INFO, summary.toString());
+        return summary;
+    }
+
+    /**
+     * Not forced, so an image still used by a container is kept. The daemon refuses to remove by id an image tagged in
+     * several repositories, in which case it is untagged tag by tag instead.
+     */
+    private void removeImage(String imageId, Set<String> tags) {
+
+        log.log(Level.INFO, String.format("Removing image %s with tags %s", imageId, tags));
+        try {
+            this.dockerClient.removeImageCmd(imageId).exec();
+        } catch (NotFoundException e) {
+            log.log(Level.FINER, String.format("Image %s already removed.", imageId));
+        } catch (ConflictException e) {
+            log.log(Level.FINER, String.format("Image %s can not be removed by id, untagging it", imageId), e);
+            for (String tag : tags) {
+                remove(tag);
+            }
+        }
+    }
+
+    /**
+     * @return registry the image is pushed to, the configured credentials being used for the configured server only.
+     */
+    public Registry registry(String image) {
+        final String serverHost = serverHost();
+
+        String host = Registry.host(image);
+        if (host == null) {
+            host = serverHost == null ? Registry.DOCKER_HUB : serverHost;
+        }
+
+        Registry registry = this.registries.get(host);
+        if (registry == null) {
+            if (host.equals(serverHost) || (serverHost == null && Registry.DOCKER_HUB.equals(host))) {
+                registry = Registry.of(host, this.dockerClientConfig.getUsername(), this.dockerClientConfig.getPassword());
+            } else {
+                registry = Registry.of(host, null, null);
+            }
+
+            // a single client per registry, so its tokens are shared by concurrent requests
+            final Registry existing = this.registries.putIfAbsent(host, registry);
+            if (existing != null) {
+                registry = existing;
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * @return host of the configured registry server, null when it is the Docker Hub.
+     */
+    private String serverHost() {
+        final String serverAddress = this.dockerClientConfig.getServerAddress();
+        if (serverAddress == null || serverAddress.isEmpty()) {
+            return null;
         }
+
+        final String host = URI.create(serverAddress.contains("://") ? serverAddress : "https://" + serverAddress).getAuthority();
+        if (host == null || host.endsWith("docker.io")) {
+            return null;
+        }
+        return host;
     }
 
     private String getTag(String image, String origin) {
         return image + ":" + origin;
     }
 
+    /**
+     * Configuration of the daemon connection. Docker instances built from equal configurations share the same client,
+     * and so the same pool of connections.
+     */
     public static class DockerConfig {
 
+        public static final String READ_TIMEOUT = "docker.io.readTimeout";
+        public static final String CONNECT_TIMEOUT = "docker.io.connectTimeout";
+        public static final String MAX_CONNECTIONS = "docker.io.maxConnections";
+
+        private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
         private final DockerClientConfig.DockerClientConfigBuilder configBuilder;
+        private Integer readTimeout;
+        private Integer connectTimeout;
+        private Integer maxConnections = DEFAULT_MAX_CONNECTIONS;
 
         public DockerConfig() {
             this.configBuilder = DockerClientConfig.createDefaultConfigBuilder();
@@ -183,6 +477,51 @@ public class Docker {
 
         public DockerConfig withProperties(Properties p) {
             this.configBuilder.withProperties(p);
+
+            if (p.containsKey(READ_TIMEOUT)) {
+                withReadTimeout(Integer.parseInt(p.getProperty(READ_TIMEOUT).trim()));
+            }
+            if (p.containsKey(CONNECT_TIMEOUT)) {
+                withConnectTimeout(Integer.parseInt(p.getProperty(CONNECT_TIMEOUT).trim()));
+            }
+            if (p.containsKey(MAX_CONNECTIONS)) {
+                withMaxConnections(Integer.parseInt(p.getProperty(MAX_CONNECTIONS).trim()));
+            }
+            return this;
+        }
+
+        /**
+         * Connects to the daemon through a Unix socket, for instance /var/run/docker.sock, instead of TCP.
+         */
+        public final DockerConfig withUnixSocket(String socketPath) {
+            this.configBuilder.withUri("unix://" + socketPath);
+            return this;
+        }
+
+        /**
+         * @param readTimeout milliseconds to wait for data from the daemon, 0 for no timeout.
+         */
+        public final DockerConfig withReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout milliseconds to wait for a connection to the daemon, 0 for no timeout.
+         */
+        public final DockerConfig withConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param maxConnections connections kept open to the daemon, to be at least the number of concurrent operations.
+         */
+        public final DockerConfig withMaxConnections(int maxConnections) {
+            if (maxConnections < 1) {
+                throw new IllegalArgumentException("At least one connection is required, got " + maxConnections);
+            }
+            this.maxConnections = maxConnections;
             return this;
         }
 
@@ -232,26 +571,9 @@ public class Docker {
         }
 
         public final Docker build() {
-            return new Docker(this.configBuilder.build());
-        }
-
-        private static class ImageTag {
-            private String image;
-            private String tag;
-
-            private ImageTag(String image, String tag) {
-                this.image = image;
-                this.tag = tag;
-            }
-
-            public static ImageTag fromRepoTag(String repoTag) {
-                final int endIndex = repoTag.indexOf(':');
-                if (endIndex > -1) {
-                    return new ImageTag(repoTag.substring(0, endIndex), repoTag.substring(endIndex + 1, repoTag.length()));
-                } else {
-                    return new ImageTag(repoTag, "");
-                }
-            }
+            final DockerClientConfig dockerClientConfig = this.configBuilder.build();
+            return new Docker(dockerClientConfig, DockerClientRegistry.client(dockerClientConfig, this.readTimeout,
+                    this.connectTimeout, this.maxConnections));
         }
     }
 
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.jaxrs.DockerCmdExecFactoryImpl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Docker clients shared by every {@link Docker} built for the same effective configuration, so the CLI, Gradle tasks
+ * and Lieutenant reuse one connection pool per daemon instead of opening a new one each time.
+ */
+final class DockerClientRegistry {
+
+    private static final Logger log = Logger.getLogger(DockerClientRegistry.class.getName());
+
+    private static final Map<Key, DockerClient> CLIENTS = new HashMap<>();
+
+    private DockerClientRegistry() {
+    }
+
+    /**
+     * @param readTimeout milliseconds, null for no timeout.
+     * @param connectTimeout milliseconds, null for no timeout.
+     * @param maxConnections connections kept open to the daemon, null for docker-java defaults.
+     */
+    static synchronized DockerClient client(DockerClientConfig config, Integer readTimeout, Integer connectTimeout,
+                                            Integer maxConnections) {
+        final Key key = new Key(config, readTimeout, connectTimeout, maxConnections);
+
+        DockerClient client = CLIENTS.get(key);
+        if (client == null) {
+            log.log(Level.FINE, String.format("Creating Docker client for %s", config.getUri()));
+
+            final DockerCmdExecFactoryImpl execFactory = new DockerCmdExecFactoryImpl()
+                    .withReadTimeout(readTimeout)
+                    .withConnectTimeout(connectTimeout)
+                    .withMaxTotalConnections(maxConnections)
+                    // a single daemon is the only route
+                    .withMaxPerRouteConnections(maxConnections);
+
+            client = DockerClientBuilder.getInstance(config).withDockerCmdExecFactory(execFactory).build();
+            CLIENTS.put(key, client);
+        }
+
+        return client;
+    }
+
+    private static class Key {
+
+        private final DockerClientConfig config;
+        private final Integer readTimeout;
+        private final Integer connectTimeout;
+        private final Integer maxConnections;
+
+        Key(DockerClientConfig config, Integer readTimeout, Integer connectTimeout, Integer maxConnections) {
+            this.config = config;
+            this.readTimeout = readTimeout;
+            this.connectTimeout = connectTimeout;
+            this.maxConnections = maxConnections;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+
+            if (!config.equals(that.config)) return false;
+            if (readTimeout != null ? !readTimeout.equals(that.readTimeout) : that.readTimeout != null) return false;
+            if (connectTimeout != null ? !connectTimeout.equals(that.connectTimeout) : that.connectTimeout != null) return false;
+            return maxConnections != null ? maxConnections.equals(that.maxConnections) : that.maxConnections == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = config.hashCode();
+            result = 31 * result + (readTimeout != null ? readTimeout.hashCode() : 0);
+            result = 31 * result + (connectTimeout != null ? connectTimeout.hashCode() : 0);
+            result = 31 * result + (maxConnections != null ? maxConnections.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Rules of a .dockerignore file. As Docker does, the last rule matching a path wins, rules starting with '!' include
+ * back what previous rules excluded, and a rule matching a directory excludes everything below it.
+ */
+public class DockerIgnore {
+
+    public static final String FILENAME = ".dockerignore";
+
+    private final List<Rule> rules;
+
+    public DockerIgnore(List<String> lines) {
+        final List<Rule> parsedRules = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+
+            boolean exception = false;
+            if (pattern.startsWith("!")) {
+                exception = true;
+                pattern = pattern.substring(1).trim();
+            }
+
+            pattern = clean(pattern);
+            if (!pattern.isEmpty()) {
+                parsedRules.add(new Rule(toRegex(pattern), exception));
+            }
+        }
+        this.rules = Collections.unmodifiableList(parsedRules);
+    }
+
+    /**
+     * @return rules of the .dockerignore file placed in given context directory, no rules if there is none.
+     */
+    public static DockerIgnore read(File contextDirectory) {
+        final File dockerignore = new File(contextDirectory, FILENAME);
+        if (!dockerignore.isFile()) {
+            return new DockerIgnore(Collections.<String>emptyList());
+        }
+
+        try {
+            return new DockerIgnore(Files.readAllLines(dockerignore.toPath(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @param relativePath path relative to the context directory using '/' as separator.
+     */
+    public boolean isExcluded(String relativePath) {
+        boolean excluded = false;
+        for (Rule rule : this.rules) {
+            if (rule.matches(relativePath)) {
+                excluded = !rule.exception;
+            }
+        }
+        return excluded;
+    }
+
+    /**
+     * A directory can be skipped as a whole when it is excluded and no rule could include back any of its children.
+     */
+    public boolean isPrunable(String relativeDirectory) {
+        if (!isExcluded(relativeDirectory)) {
+            return false;
+        }
+        for (Rule rule : this.rules) {
+            if (rule.exception) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String clean(String pattern) {
+        String cleaned = pattern.replace(File.separatorChar, '/');
+        while (cleaned.startsWith("/")) {
+            cleaned = cleaned.substring(1);
+        }
+        while (cleaned.startsWith("./")) {
+            cleaned = cleaned.substring(2);
+        }
+        while (cleaned.endsWith("/")) {
+            cleaned = cleaned.substring(0, cleaned.length() - 1);
+        }
+        return cleaned;
+    }
+
+    static Pattern toRegex(String pattern) {
+        final StringBuilder regex = new StringBuilder();
+        int index = 0;
+        while (index < pattern.length()) {
+            final char c = pattern.charAt(index);
+            if (c == '*') {
+                if (index + 1 < pattern.length() && pattern.charAt(index + 1) == '*') {
+                    index += 2;
+                    if (index < pattern.length() && pattern.charAt(index) == '/') {
+                        // "**/" matches zero or more directories
+                        regex.append("(.*/)?");
+                        index++;
+                    } else {
+                        regex.append(".*");
+                    }
+                    continue;
+                }
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            index++;
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static class Rule {
+
+        private final Pattern pattern;
+        private final boolean exception;
+
+        Rule(Pattern pattern, boolean exception) {
+            this.pattern = pattern;
+            this.exception = exception;
+        }
+
+        boolean matches(String relativePath) {
+            if (this.pattern.matcher(relativePath).matches()) {
+                return true;
+            }
+
+            // a rule matching any parent directory matches the path too
+            int separator = relativePath.lastIndexOf('/');
+            while (separator > 0) {
+                if (this.pattern.matcher(relativePath.substring(0, separator)).matches()) {
+                    return true;
+                }
+                separator = relativePath.lastIndexOf('/', separator - 1);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+/**
+ * Receives the progress streamed by the daemon while an image is built or pushed. Methods are called from the thread
+ * reading the daemon response, so they must not block.
+ */
+public interface DockerListener {
+
+    DockerListener NONE = new DockerListener() {
+        @Override
+        public void onBuildStep(String image, String step) {
+        }
+
+        @Override
+        public void onProgress(String image, String layer, String status, long current, long total) {
+        }
+
+        @Override
+        public void onSuccess(String image, String result) {
+        }
+
+        @Override
+        public void onFailure(String image, Throwable failure) {
+        }
+    };
+
+    /**
+     * @param step a line of the build output, for instance "Step 2 : RUN make".
+     */
+    void onBuildStep(String image, String step);
+
+    /**
+     * @param layer id of the layer, null for messages about the whole image.
+     * @param status as reported by the daemon, for instance "Pushing" or "Layer already exists".
+     * @param current bytes transferred so far, 0 when the daemon does not report them.
+     * @param total size of the layer in bytes, 0 when unknown.
+     */
+    void onProgress(String image, String layer, String status, long current, long total);
+
+    /**
+     * @param result id of the built image, or digest of the pushed image when the daemon reports it.
+     */
+    void onSuccess(String image, String result);
+
+    void onFailure(String image, Throwable failure);
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An operation running on the daemon, completed by the docker-java thread reading the response stream. Cancelling
+ * it closes that stream.
+ *
+ * docker-java still reads every response stream on a thread of its own, so each running operation holds a thread
+ * until it completes. Callers just do not have to block one of theirs on it.
+ */
+public class DockerOperation<V> implements Future<V> {
+
+    private static final Logger log = Logger.getLogger(DockerOperation.class.getName());
+
+    private final String image;
+    private final Closeable resource;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Closeable stream;
+    private volatile V result;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+
+    /**
+     * @param resource closed once the operation is over, whatever its outcome. Might be null.
+     */
+    DockerOperation(String image, Closeable resource) {
+        this.image = image;
+        this.resource = resource;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    void started(Closeable stream) {
+        this.stream = stream;
+        if (this.cancelled) {
+            close(stream);
+        }
+    }
+
+    synchronized boolean complete(V result) {
+        if (isDone()) {
+            return false;
+        }
+        this.result = result;
+        finish();
+        return true;
+    }
+
+    synchronized boolean fail(Throwable failure) {
+        if (isDone()) {
+            return false;
+        }
+        this.failure = failure;
+        finish();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        this.cancelled = true;
+        close(this.stream);
+        finish();
+        return true;
+    }
+
+    private void finish() {
+        close(this.resource);
+        this.done.countDown();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        this.done.await();
+        return outcome();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!this.done.await(timeout, unit)) {
+            throw new TimeoutException(String.format("%s still running after %d %s", this.image, timeout, unit));
+        }
+        return outcome();
+    }
+
+    /**
+     * Waits for the operation, failures being rethrown as they are when unchecked.
+     */
+    public V await() {
+        try {
+            return get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(true);
+            throw new IllegalStateException(String.format("Interrupted while waiting for %s", this.image), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private V outcome() throws ExecutionException {
+        if (this.cancelled) {
+            throw new CancellationException(String.format("%s cancelled", this.image));
+        }
+        if (this.failure != null) {
+            throw new ExecutionException(this.failure);
+        }
+        return this.result;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.log(Level.FINE, "Failed to close daemon stream", e);
+        }
+    }
+}
@@ -18,48 +18,206 @@ package org.tomitribe.lieutenant.docker;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+/**
+ * Finds the Dockerfiles of a project. Directories that can not hold any application are not walked: .git, the
+ * Lieutenant state, what .gitignore files ignore, what the root .dockerignore excludes and what matches the configured
+ * excludes (following .gitignore syntax). Independent subtrees are walked in parallel.
+ */
 public class DockerfileFinder {
 
+    public static final String DOCKERFILE_PREFIX = "Dockerfile";
+    private static final Set<String> SKIPPED_DIRECTORIES = new HashSet<>(Arrays.asList(".git", ".lieutenant"));
+
     private File startingDir;
+    private final GitIgnore excludes;
+    private final DockerIgnore dockerIgnore;
 
     public DockerfileFinder(File startingDir) {
+        this(startingDir, Collections.<String>emptySet());
+    }
+
+    public DockerfileFinder(File startingDir, Collection<String> excludes) {
         if (startingDir == null) {
             throw new IllegalArgumentException("Starting Directory should contain none null value.");
         }
         this.startingDir = startingDir;
+        this.excludes = new GitIgnore(excludes == null ? Collections.<String>emptySet() : excludes);
+        this.dockerIgnore = DockerIgnore.read(startingDir);
     }
 
     public Set<Path> dockerfiles() throws IOException {
-        final DockfileFileVisitor finder = new DockfileFileVisitor();
-        Files.walkFileTree(this.startingDir.toPath(), finder);
+        final Path root = this.startingDir.toPath();
+
+        final List<IgnoreFrame> frames = new ArrayList<>();
+        final GitIgnore rootGitIgnore = GitIgnore.read(this.startingDir);
+        if (rootGitIgnore != null) {
+            frames.add(new IgnoreFrame("", rootGitIgnore));
+        }
 
-        return finder.getDockerfiles();
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return Collections.unmodifiableSet(pool.invoke(new DirectoryWalk(root, root, frames)));
+        } catch (DirectoryWalkException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
     }
 
-    private static class DockfileFileVisitor extends SimpleFileVisitor<Path> {
+    /**
+     * Keeps the candidates, relative to the starting directory, that are existing Dockerfiles outside of skipped,
+     * excluded or .dockerignore'd directories. Used when candidates are already known, for instance from the git index,
+     * so nothing but the candidates themselves is read from disk.
+     */
+    public Set<Path> dockerfiles(Collection<String> candidates) {
+        final List<IgnoreFrame> noFrames = Collections.emptyList();
+        final Set<Path> dockerfiles = new HashSet<>();
 
-        private final Set<Path> dockerfiles = new HashSet<>();
+        for (String candidate : candidates) {
+            final String relativePath = candidate.replace(File.separatorChar, '/');
+            if (!relativePath.substring(relativePath.lastIndexOf('/') + 1).startsWith(DOCKERFILE_PREFIX)) {
+                continue;
+            }
 
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            boolean pruned = false;
+            int separator = relativePath.indexOf('/');
+            while (separator > 0 && !pruned) {
+                final String directory = relativePath.substring(0, separator);
+                pruned = isPruned(directory, directory.substring(directory.lastIndexOf('/') + 1), noFrames);
+                separator = relativePath.indexOf('/', separator + 1);
+            }
+
+            final File dockerfile = new File(this.startingDir, relativePath);
+            if (!pruned && dockerfile.isFile()) {
+                dockerfiles.add(dockerfile.toPath());
+            }
+        }
+
+        return Collections.unmodifiableSet(dockerfiles);
+    }
+
+    private boolean isPruned(String relativePath, String name, List<IgnoreFrame> frames) {
+        return SKIPPED_DIRECTORIES.contains(name)
+                || Boolean.TRUE.equals(this.excludes.isIgnored(relativePath, true))
+                || this.dockerIgnore.isPrunable(relativePath)
+                || isIgnored(relativePath, true, frames);
+    }
+
+    /**
+     * The deepest .gitignore having a rule about the path decides, as git does.
+     */
+    private static boolean isIgnored(String relativePath, boolean directory, List<IgnoreFrame> frames) {
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            final IgnoreFrame frame = frames.get(i);
+            final String framePath = frame.directory.isEmpty() ? relativePath : relativePath.substring(frame.directory.length() + 1);
 
-            if (file.getFileName().toString().startsWith("Dockerfile")) {
-                dockerfiles.add(file);
+            final Boolean ignored = frame.gitIgnore.isIgnored(framePath, directory);
+            if (ignored != null) {
+                return ignored;
             }
+        }
+        return false;
+    }
+
+    private static String relativize(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static class IgnoreFrame {
+
+        private final String directory;
+        private final GitIgnore gitIgnore;
 
-            return FileVisitResult.CONTINUE;
+        IgnoreFrame(String directory, GitIgnore gitIgnore) {
+            this.directory = directory;
+            this.gitIgnore = gitIgnore;
+        }
+    }
+
+    private class DirectoryWalk extends RecursiveTask<Set<Path>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path directory;
+        private final List<IgnoreFrame> frames;
+
+        DirectoryWalk(Path root, Path directory, List<IgnoreFrame> frames) {
+            this.root = root;
+            this.directory = directory;
+            this.frames = frames;
         }
 
-        public Set<Path> getDockerfiles() {
+        @Override
+        protected Set<Path> compute() {
+            final Set<Path> dockerfiles = new HashSet<>();
+            final List<DirectoryWalk> subtrees = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+                for (Path entry : entries) {
+                    final BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    final String name = entry.getFileName().toString();
+                    final String relativePath = relativize(this.root, entry);
+
+                    if (attributes.isDirectory()) {
+                        if (!isPruned(relativePath, name, this.frames)) {
+                            final DirectoryWalk subtree = new DirectoryWalk(this.root, entry, framesOf(entry, relativePath));
+                            subtree.fork();
+                            subtrees.add(subtree);
+                        }
+                    } else if (attributes.isRegularFile() && name.startsWith(DOCKERFILE_PREFIX)
+                            && !isIgnored(relativePath, false, this.frames)) {
+                        dockerfiles.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                throw new DirectoryWalkException(e);
+            }
+
+            for (DirectoryWalk subtree : subtrees) {
+                dockerfiles.addAll(subtree.join());
+            }
             return dockerfiles;
         }
+
+        private List<IgnoreFrame> framesOf(Path subdirectory, String relativePath) {
+            final GitIgnore gitIgnore = GitIgnore.read(subdirectory.toFile());
+            if (gitIgnore == null) {
+                return this.frames;
+            }
+
+            final List<IgnoreFrame> subdirectoryFrames = new ArrayList<>(this.frames);
+            subdirectoryFrames.add(new IgnoreFrame(relativePath, gitIgnore));
+            return subdirectoryFrames;
+        }
+    }
+
+    private static class DirectoryWalkException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        DirectoryWalkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
     }
 }
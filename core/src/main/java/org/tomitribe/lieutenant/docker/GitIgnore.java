@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Rules of a .gitignore file, or of any list of patterns following its syntax, relative to the directory holding it.
+ * Patterns without slash match at any depth, patterns with a slash are anchored to the directory, a trailing slash
+ * only matches directories and a leading '!' includes back what previous rules excluded.
+ */
+class GitIgnore {
+
+    static final String FILENAME = ".gitignore";
+
+    private final List<Rule> rules;
+
+    GitIgnore(Collection<String> lines) {
+        final List<Rule> parsedRules = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+
+            boolean exception = false;
+            if (pattern.startsWith("!")) {
+                exception = true;
+                pattern = pattern.substring(1);
+            }
+
+            boolean directoryOnly = false;
+            if (pattern.endsWith("/")) {
+                directoryOnly = true;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+
+            final boolean anchored = pattern.contains("/");
+            while (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+
+            if (!pattern.isEmpty()) {
+                final String glob = anchored || pattern.startsWith("**") ? pattern : "**/" + pattern;
+                parsedRules.add(new Rule(DockerIgnore.toRegex(glob), exception, directoryOnly));
+            }
+        }
+        this.rules = Collections.unmodifiableList(parsedRules);
+    }
+
+    /**
+     * @return rules of the .gitignore file of given directory, null if it has none.
+     */
+    static GitIgnore read(File directory) {
+        final File gitignore = new File(directory, FILENAME);
+        if (!gitignore.isFile()) {
+            return null;
+        }
+
+        try {
+            return new GitIgnore(Files.readAllLines(gitignore.toPath(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @param relativePath path relative to the directory of the rules using '/' as separator.
+     * @return true if ignored, false if explicitly included back, null if no rule is about this path.
+     */
+    Boolean isIgnored(String relativePath, boolean directory) {
+        Boolean ignored = null;
+        for (Rule rule : this.rules) {
+            if ((directory || !rule.directoryOnly) && rule.pattern.matcher(relativePath).matches()) {
+                ignored = !rule.exception;
+            }
+        }
+        return ignored;
+    }
+
+    private static class Rule {
+
+        private final Pattern pattern;
+        private final boolean exception;
+        private final boolean directoryOnly;
+
+        Rule(Pattern pattern, boolean exception, boolean directoryOnly) {
+            this.pattern = pattern;
+            this.exception = exception;
+            this.directoryOnly = directoryOnly;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.github.dockerjava.api.model.Image;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Images of the daemon indexed by repository, built from a single image listing.
+ */
+public class ImageIndex {
+
+    private static final String UNTAGGED = "<none>:<none>";
+
+    private final Map<String, Set<String>> tagsByRepository = new HashMap<>();
+    private final Map<String, Set<String>> tagsById = new HashMap<>();
+    private final Map<String, String> idsByTag = new HashMap<>();
+
+    public ImageIndex(List<Image> images) {
+        for (Image image : images) {
+            final String[] repoTags = image.getRepoTags();
+            if (repoTags == null) {
+                continue;
+            }
+
+            for (String repoTag : repoTags) {
+                if (UNTAGGED.equals(repoTag)) {
+                    continue;
+                }
+
+                add(this.tagsByRepository, repository(repoTag), repoTag);
+                add(this.tagsById, image.getId(), repoTag);
+                this.idsByTag.put(repoTag, image.getId());
+            }
+        }
+    }
+
+    /**
+     * @return every repo tag (repository:tag) of given repository.
+     */
+    public Set<String> tags(String repository) {
+        final Set<String> tags = this.tagsByRepository.get(repository);
+        if (tags == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(tags);
+    }
+
+    /**
+     * @return id of the image tagged with given repo tag, or null if no image is tagged with it.
+     */
+    public String imageId(String repoTag) {
+        return this.idsByTag.get(repoTag);
+    }
+
+    /**
+     * @return every repo tag pointing to given image id, whatever its repository.
+     */
+    public Set<String> tagsOfImage(String imageId) {
+        final Set<String> tags = this.tagsById.get(imageId);
+        if (tags == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(tags);
+    }
+
+    private static void add(Map<String, Set<String>> index, String key, String repoTag) {
+        Set<String> tags = index.get(key);
+        if (tags == null) {
+            tags = new HashSet<>();
+            index.put(key, tags);
+        }
+        tags.add(repoTag);
+    }
+
+    static String repository(String repoTag) {
+        final int tagIndex = repoTag.lastIndexOf(':');
+        if (tagIndex > repoTag.lastIndexOf('/')) {
+            return repoTag.substring(0, tagIndex);
+        }
+        return repoTag;
+    }
+}
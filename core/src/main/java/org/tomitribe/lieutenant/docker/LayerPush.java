@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+public class LayerPush {
+
+    private final String id;
+    private final long bytes;
+    private final long durationMillis;
+    private final boolean alreadyExisted;
+
+    public LayerPush(String id, long bytes, long durationMillis, boolean alreadyExisted) {
+        this.id = id;
+        this.bytes = bytes;
+        this.durationMillis = durationMillis;
+        this.alreadyExisted = alreadyExisted;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return bytes uploaded, 0 when the layer already existed in the registry.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return milliseconds from the first to the last byte uploaded.
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public boolean isAlreadyExisted() {
+        return alreadyExisted;
+    }
+
+    @Override
+    public String toString() {
+        if (alreadyExisted) {
+            return String.format("%s already existed", id);
+        }
+        return String.format("%s %d bytes in %d ms", id, bytes, durationMillis);
+    }
+}
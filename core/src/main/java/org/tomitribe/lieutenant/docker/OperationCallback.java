@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.github.dockerjava.api.DockerClientException;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.BuildResponseItem;
+import com.github.dockerjava.api.model.PushResponseItem;
+import com.github.dockerjava.api.model.ResponseItem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Forwards the items streamed by the daemon to a listener and completes the operation once the stream ends.
+ */
+abstract class OperationCallback<I extends ResponseItem, V> implements ResultCallback<I> {
+
+    private static final Logger log = Logger.getLogger(OperationCallback.class.getName());
+
+    protected final DockerOperation<V> operation;
+    protected final DockerListener listener;
+    private volatile String error;
+
+    OperationCallback(DockerOperation<V> operation, DockerListener listener) {
+        this.operation = operation;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onStart(Closeable stream) {
+        this.operation.started(stream);
+    }
+
+    @Override
+    public void onNext(I item) {
+        if (item.isErrorIndicated()) {
+            this.error = errorMessage(item);
+            return;
+        }
+
+        try {
+            next(item);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, String.format("Listener of %s failed", this.operation.getImage()), e);
+        }
+    }
+
+    protected abstract void next(I item);
+
+    /**
+     * Older daemons only report the error as a plain message, without its detail.
+     */
+    @SuppressWarnings("deprecation")
+    private static String errorMessage(ResponseItem item) {
+        final ResponseItem.ErrorDetail errorDetail = item.getErrorDetail();
+        if (errorDetail != null && errorDetail.getMessage() != null) {
+            return errorDetail.getMessage();
+        }
+        return item.getError();
+    }
+
+    /**
+     * @throws DockerClientException if the stream ended without the expected result.
+     */
+    protected abstract V result();
+
+    /**
+     * Listeners are notified before the operation completes, so they have seen the outcome once it is available.
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        if (!this.operation.isDone()) {
+            notifyFailure(throwable);
+            this.operation.fail(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (this.error != null) {
+            onError(new DockerClientException(String.format("%s failed: %s", this.operation.getImage(), this.error)));
+            return;
+        }
+
+        final V result;
+        try {
+            result = result();
+        } catch (DockerClientException e) {
+            onError(e);
+            return;
+        }
+
+        if (!this.operation.isDone()) {
+            try {
+                this.listener.onSuccess(this.operation.getImage(), result == null ? null : result.toString());
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, String.format("Listener of %s failed", this.operation.getImage()), e);
+            }
+            this.operation.complete(result);
+        }
+    }
+
+    private void notifyFailure(Throwable throwable) {
+        try {
+            this.listener.onFailure(this.operation.getImage(), throwable);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, String.format("Listener of %s failed", this.operation.getImage()), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.operation.cancel(true);
+    }
+
+    protected void progress(ResponseItem item) {
+        if (item.getStatus() == null) {
+            return;
+        }
+
+        long current = 0;
+        long total = 0;
+        if (item.getProgressDetail() != null) {
+            current = item.getProgressDetail().getCurrent();
+            total = item.getProgressDetail().getTotal();
+        }
+        this.listener.onProgress(this.operation.getImage(), item.getId(), item.getStatus(), current, total);
+    }
+
+    static class Build extends OperationCallback<BuildResponseItem, String> {
+
+        private volatile String imageId;
+
+        Build(DockerOperation<String> operation, DockerListener listener) {
+            super(operation, listener);
+        }
+
+        @Override
+        protected void next(BuildResponseItem item) {
+            if (item.isBuildSuccessIndicated()) {
+                this.imageId = item.getImageId();
+            }
+
+            if (item.getStream() != null && !item.getStream().trim().isEmpty()) {
+                this.listener.onBuildStep(this.operation.getImage(), item.getStream().trim());
+            } else {
+                progress(item);
+            }
+        }
+
+        @Override
+        protected String result() {
+            if (this.imageId == null) {
+                throw new DockerClientException(String.format("Could not build image %s", this.operation.getImage()));
+            }
+            return this.imageId;
+        }
+    }
+
+    static class Push extends OperationCallback<PushResponseItem, String> {
+
+        private static final Pattern DIGEST = Pattern.compile("digest: (\\S+)");
+
+        private volatile String digest;
+
+        Push(DockerOperation<String> operation, DockerListener listener) {
+            super(operation, listener);
+        }
+
+        @Override
+        protected void next(PushResponseItem item) {
+            if (item.getStatus() != null) {
+                final Matcher matcher = DIGEST.matcher(item.getStatus());
+                if (matcher.find()) {
+                    this.digest = matcher.group(1);
+                }
+            }
+            progress(item);
+        }
+
+        /**
+         * @return digest of the pushed manifest, null for daemons not reporting it.
+         */
+        @Override
+        protected String result() {
+            return this.digest;
+        }
+    }
+}
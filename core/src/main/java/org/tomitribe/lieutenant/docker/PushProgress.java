@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows the progress events of a push to measure, for every layer, the bytes uploaded and the time spent uploading
+ * them, or whether the registry already had it.
+ */
+class PushProgress implements DockerListener {
+
+    private static final Logger log = Logger.getLogger(PushProgress.class.getName());
+
+    static final String PUSHING = "Pushing";
+    static final String PUSHED = "Pushed";
+    static final String ALREADY_EXISTS = "Layer already exists";
+
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+
+    @Override
+    public void onBuildStep(String image, String step) {
+    }
+
+    @Override
+    public synchronized void onProgress(String image, String layerId, String status, long current, long total) {
+        // messages without layer are about the whole image
+        if (layerId == null) {
+            return;
+        }
+
+        Layer layer = this.layers.get(layerId);
+        if (layer == null) {
+            layer = new Layer();
+            this.layers.put(layerId, layer);
+        }
+
+        final long now = System.currentTimeMillis();
+        if (status.startsWith(ALREADY_EXISTS)) {
+            layer.alreadyExisted = true;
+        } else if (status.startsWith(PUSHING)) {
+            if (layer.start == 0) {
+                layer.start = now;
+            }
+            layer.bytes = Math.max(layer.bytes, current);
+            layer.total = Math.max(layer.total, total);
+        } else if (status.startsWith(PUSHED)) {
+            layer.end = now;
+            log.log(Level.FINE, String.format("Pushed layer %s of %s", layerId, image));
+        }
+    }
+
+    @Override
+    public void onSuccess(String image, String result) {
+    }
+
+    @Override
+    public void onFailure(String image, Throwable failure) {
+    }
+
+    synchronized PushReport report(String image, String digest, long durationMillis) {
+        final List<LayerPush> layerPushes = new ArrayList<>();
+        for (Map.Entry<String, Layer> entry : this.layers.entrySet()) {
+            final Layer layer = entry.getValue();
+
+            if (layer.alreadyExisted) {
+                layerPushes.add(new LayerPush(entry.getKey(), 0, 0, true));
+            } else if (layer.start > 0 || layer.end > 0) {
+                // the last progress event usually comes before the whole layer is sent
+                final long bytes = layer.end > 0 ? Math.max(layer.bytes, layer.total) : layer.bytes;
+                final long end = layer.end > 0 ? layer.end : System.currentTimeMillis();
+                final long start = layer.start > 0 ? layer.start : end;
+                layerPushes.add(new LayerPush(entry.getKey(), bytes, end - start, false));
+            }
+        }
+        return new PushReport(image, digest, durationMillis, layerPushes);
+    }
+
+    private static class Layer {
+        private long start;
+        private long end;
+        private long bytes;
+        private long total;
+        private boolean alreadyExisted;
+    }
+}
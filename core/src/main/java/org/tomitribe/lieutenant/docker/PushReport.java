@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class PushReport {
+
+    private final String image;
+    private final String digest;
+    private final long durationMillis;
+    private final List<LayerPush> layers;
+
+    public PushReport(String image, String digest, long durationMillis, List<LayerPush> layers) {
+        this.image = image;
+        this.digest = digest;
+        this.durationMillis = durationMillis;
+        this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    /**
+     * @return digest of the pushed manifest, null when the daemon does not report it.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public List<LayerPush> getLayers() {
+        return layers;
+    }
+
+    public long getUploadedBytes() {
+        long bytes = 0;
+        for (LayerPush layer : layers) {
+            bytes += layer.getBytes();
+        }
+        return bytes;
+    }
+
+    public int getUploadedLayers() {
+        return layers.size() - getExistingLayers();
+    }
+
+    public int getExistingLayers() {
+        int existing = 0;
+        for (LayerPush layer : layers) {
+            if (layer.isAlreadyExisted()) {
+                existing++;
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @return the uploaded layer that took the longest, null if every layer already existed.
+     */
+    public LayerPush getSlowestLayer() {
+        LayerPush slowest = null;
+        for (LayerPush layer : layers) {
+            if (!layer.isAlreadyExisted() && (slowest == null || layer.getDurationMillis() > slowest.getDurationMillis())) {
+                slowest = layer;
+            }
+        }
+        return slowest;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pushed %s in %d ms: %d bytes in %d layers, %d layers already existed", image,
+                durationMillis, getUploadedBytes(), getUploadedLayers(), getExistingLayers());
+    }
+}
@@ -0,0 +1,530 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tomitribe.lieutenant.concurrent.TaskRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client of the Docker Registry HTTP API v2, to manage pushed images straight in the registry.
+ *
+ * Registries asking for a bearer token get one from the token service they point to, authenticating with the
+ * configured credentials when there are some. Tokens are kept per scope and reused by later requests.
+ */
+public class Registry {
+
+    private final static Logger log = Logger.getLogger(Registry.class.getName());
+
+    public static final String DOCKER_HUB = "registry-1.docker.io";
+
+    /**
+     * Tags asked for per page when listing, so no single request has to return the whole history of a repository.
+     */
+    static final int PAGE_SIZE = 100;
+
+    private static final String IMAGE_MANIFEST_TYPES = "application/vnd.docker.distribution.manifest.v2+json, "
+            + "application/vnd.oci.image.manifest.v1+json";
+
+    private static final String MANIFEST_TYPES = IMAGE_MANIFEST_TYPES + ", "
+            + "application/vnd.docker.distribution.manifest.list.v2+json, "
+            + "application/vnd.oci.image.index.v1+json";
+
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"?next\"?");
+    private static final Pattern CHALLENGE_PARAMETER = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+    private final URL url;
+    private final String username;
+    private final String password;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+    public Registry(URL url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * @return registry serving given host, plain http being used for registries running on the local machine as
+     * Docker does.
+     */
+    public static Registry of(String host, String username, String password) {
+        final String hostname = host.contains(":") ? host.substring(0, host.indexOf(':')) : host;
+        final boolean local = "localhost".equals(hostname) || hostname.startsWith("127.");
+        try {
+            return new Registry(new URL((local ? "http://" : "https://") + host), username, password);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @return registry host of the image reference, null if it refers to the default registry.
+     */
+    public static String host(String image) {
+        final int separator = image.indexOf('/');
+        if (separator < 0) {
+            return null;
+        }
+
+        final String component = image.substring(0, separator);
+        if (component.contains(".") || component.contains(":") || "localhost".equals(component)) {
+            return component;
+        }
+        return null;
+    }
+
+    /**
+     * @return name of the repository in its registry, that is the image reference without registry host nor tag.
+     */
+    public static String repository(String image) {
+        final String host = host(image);
+        String repository = host == null ? image : image.substring(host.length() + 1);
+
+        final int digest = repository.indexOf('@');
+        if (digest > -1) {
+            repository = repository.substring(0, digest);
+        }
+        final int tag = repository.lastIndexOf(':');
+        if (tag > -1) {
+            repository = repository.substring(0, tag);
+        }
+        return repository;
+    }
+
+    /**
+     * @return tag of the image reference, latest if it has none.
+     */
+    public static String tag(String image) {
+        final String host = host(image);
+        final String repository = host == null ? image : image.substring(host.length() + 1);
+
+        final int tag = repository.lastIndexOf(':');
+        return tag > -1 && repository.indexOf('@') < 0 ? repository.substring(tag + 1) : "latest";
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Lists every tag of the repository, following the pages the registry splits the list in.
+     *
+     * @return tags of the repository, empty if the repository does not exist.
+     */
+    public Set<String> tags(String repository) {
+        final Set<String> tags = new LinkedHashSet<>();
+
+        String path = String.format("/v2/%s/tags/list?n=%d", repository, PAGE_SIZE);
+        while (path != null) {
+            final HttpURLConnection connection = execute("GET", path, repository, "pull", null);
+            try {
+                final int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return tags;
+                }
+                check(connection, status, String.format("list tags of %s", repository));
+
+                try (InputStream body = connection.getInputStream()) {
+                    final JsonNode page = this.objectMapper.readTree(body);
+                    for (JsonNode tag : page.path("tags")) {
+                        tags.add(tag.asText());
+                    }
+                }
+                path = nextPage(connection.getHeaderField("Link"));
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Could not list tags of %s in %s", repository, this.url), e);
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        return tags;
+    }
+
+    /**
+     * @return digest of the manifest the reference, tag or digest, points to in the repository, null if there is none.
+     */
+    public String digest(String repository, String reference) {
+        final HttpURLConnection connection = execute("HEAD", String.format("/v2/%s/manifests/%s", repository, reference),
+                repository, "pull", MANIFEST_TYPES);
+        try {
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            check(connection, status, String.format("find manifest %s:%s", repository, reference));
+            return connection.getHeaderField("Docker-Content-Digest");
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not find manifest %s:%s in %s", repository, reference, this.url), e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Reads the manifest the reference points to, which is only a few hundred bytes, to know the image it describes.
+     *
+     * @return id of the image, that is the digest of its configuration, null if there is no manifest or it describes
+     * several images as manifest lists do.
+     */
+    public String imageId(String repository, String reference) {
+        final HttpURLConnection connection = execute("GET", String.format("/v2/%s/manifests/%s", repository, reference),
+                repository, "pull", IMAGE_MANIFEST_TYPES);
+        try {
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            check(connection, status, String.format("read manifest %s:%s", repository, reference));
+
+            try (InputStream body = connection.getInputStream()) {
+                final JsonNode config = this.objectMapper.readTree(body).path("config").path("digest");
+                return config.isTextual() ? config.asText() : null;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not read manifest %s:%s in %s", repository, reference, this.url), e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return digests of the layers of the image the reference points to, in order, empty if there is no such image.
+     */
+    public List<String> layers(String repository, String reference) {
+        final HttpURLConnection connection = execute("GET", String.format("/v2/%s/manifests/%s", repository, reference),
+                repository, "pull", IMAGE_MANIFEST_TYPES);
+        try {
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return Collections.emptyList();
+            }
+            check(connection, status, String.format("read manifest %s:%s", repository, reference));
+
+            final List<String> layers = new ArrayList<>();
+            try (InputStream body = connection.getInputStream()) {
+                for (JsonNode layer : this.objectMapper.readTree(body).path("layers")) {
+                    layers.add(layer.path("digest").asText());
+                }
+            }
+            return layers;
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not read manifest %s:%s in %s", repository, reference, this.url), e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Links a layer already stored for another repository of the registry into the repository, so pushing an image
+     * with that layer does not upload it again.
+     *
+     * @return false if the registry could not mount the layer, in which case it has to be uploaded.
+     */
+    public boolean mount(String repository, String digest, String from) {
+        final String path = String.format("/v2/%s/blobs/uploads/?mount=%s&from=%s", repository, digest, from);
+        final String scope = String.format("repository:%s:pull,push repository:%s:pull", repository, from);
+
+        final HttpURLConnection connection = execute("POST", path, scope, null);
+        try {
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_CREATED) {
+                log.log(Level.FINE, String.format("Mounted layer %s into %s from %s", digest, repository, from));
+                return true;
+            }
+            check(connection, status, String.format("mount layer %s into %s", digest, repository));
+
+            // the registry started a regular upload instead, which is not needed
+            final String location = connection.getHeaderField("Location");
+            if (location != null) {
+                final HttpURLConnection cancel = connect("DELETE", location, null, authorization(scope));
+                try {
+                    cancel.getResponseCode();
+                } finally {
+                    cancel.disconnect();
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not mount layer %s into %s in %s", digest, repository, this.url), e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Deletes the manifest, and so every tag pointing to it. Layers are only reclaimed once the registry garbage
+     * collects them.
+     *
+     * @return false if the manifest did not exist.
+     */
+    public boolean deleteManifest(String repository, String digest) {
+        log.log(Level.INFO, String.format("Deleting manifest %s@%s", repository, digest));
+
+        final HttpURLConnection connection = execute("DELETE", String.format("/v2/%s/manifests/%s", repository, digest),
+                repository, "*", null);
+        try {
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                log.log(Level.FINER, String.format("Manifest %s@%s already deleted.", repository, digest));
+                return false;
+            }
+            if (status == HttpURLConnection.HTTP_BAD_METHOD) {
+                throw new IllegalStateException(String.format("Registry %s does not allow deletes, "
+                        + "it must run with REGISTRY_STORAGE_DELETE_ENABLED=true", this.url));
+            }
+            check(connection, status, String.format("delete manifest %s@%s", repository, digest));
+            return true;
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not delete manifest %s@%s in %s", repository, digest, this.url), e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Removes tags of the repository by deleting the manifests they point to, using up to parallelism concurrent
+     * requests.
+     *
+     * As a manifest can not be deleted without deleting all its tags, manifests also pointed to by any tag to keep are
+     * left untouched.
+     *
+     * @param tags every current tag of the repository.
+     * @param tagsToRemove tags that can be removed.
+     * @throws org.tomitribe.lieutenant.concurrent.TaskFailedException if any request fails, once all others are done.
+     */
+    public RemovalSummary remove(final String repository, Collection<String> tags, Collection<String> tagsToRemove,
+                                 int parallelism) {
+        final long start = System.currentTimeMillis();
+
+        if (tagsToRemove.isEmpty()) {
+            return new RemovalSummary(0, 0, 0);
+        }
+
+        final Map<String, Callable<String>> lookups = new LinkedHashMap<>();
+        for (final String tag : tags) {
+            lookups.put(tag, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return digest(repository, tag);
+                }
+            });
+        }
+        final Map<String, String> digests = new TaskRunner("registry lookup", parallelism, false).run(lookups);
+
+        final Map<String, Set<String>> tagsByDigest = new HashMap<>();
+        for (Map.Entry<String, String> digest : digests.entrySet()) {
+            if (digest.getValue() == null) {
+                continue;
+            }
+            Set<String> digestTags = tagsByDigest.get(digest.getValue());
+            if (digestTags == null) {
+                digestTags = new LinkedHashSet<>();
+                tagsByDigest.put(digest.getValue(), digestTags);
+            }
+            digestTags.add(digest.getKey());
+        }
+
+        final AtomicInteger removedTags = new AtomicInteger();
+        final AtomicInteger removedManifests = new AtomicInteger();
+
+        final Map<String, Callable<Void>> deletions = new LinkedHashMap<>();
+        for (final Map.Entry<String, Set<String>> group : tagsByDigest.entrySet()) {
+            final String digest = group.getKey();
+            final Set<String> digestTags = group.getValue();
+
+            if (!tagsToRemove.containsAll(digestTags)) {
+                if (containsAny(tagsToRemove, digestTags)) {
+                    log.log(Level.INFO, String.format("Keeping manifest %s@%s, still tagged as %s", repository, digest, digestTags));
+                }
+                continue;
+            }
+
+            deletions.put(digest, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    if (deleteManifest(repository, digest)) {
+                        removedManifests.incrementAndGet();
+                        removedTags.addAndGet(digestTags.size());
+                    }
+                    return null;
+                }
+            });
+        }
+
+        new TaskRunner("registry delete", parallelism, false).run(deletions);
+
+        final RemovalSummary summary = new RemovalSummary(removedTags.get(), removedManifests.get(),
+                System.currentTimeMillis() - start);
+        log.log(Level.INFO, String.format("%s from %s", summary, repository));
+        return summary;
+    }
+
+    private static boolean containsAny(Collection<String> collection, Collection<String> elements) {
+        for (String element : elements) {
+            if (collection.contains(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String nextPage(String link) {
+        if (link == null) {
+            return null;
+        }
+        final Matcher matcher = NEXT_LINK.matcher(link);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private HttpURLConnection execute(String method, String path, String repository, String actions, String accept) {
+        return execute(method, path, String.format("repository:%s:%s", repository, actions), accept);
+    }
+
+    /**
+     * @param scope access the request needs, several scopes being separated by spaces.
+     */
+    private HttpURLConnection execute(String method, String path, String scope, String accept) {
+        try {
+            HttpURLConnection connection = connect(method, path, accept, authorization(scope));
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                final String challenge = connection.getHeaderField("WWW-Authenticate");
+                connection.disconnect();
+
+                connection = connect(method, path, accept, authenticate(challenge, scope));
+            }
+            return connection;
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not connect to registry %s", this.url), e);
+        }
+    }
+
+    private HttpURLConnection connect(String method, String path, String accept, String authorization) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(this.url, path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(true);
+        if (accept != null) {
+            connection.setRequestProperty("Accept", accept);
+        }
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    private String authorization(String scope) {
+        final String token = this.tokens.get(scope);
+        if (token != null) {
+            return token;
+        }
+        return basicAuthorization();
+    }
+
+    private String basicAuthorization() {
+        if (this.username == null || this.username.isEmpty()) {
+            return null;
+        }
+        final String credentials = this.username + ":" + (this.password == null ? "" : this.password);
+        return "Basic " + Base64Variants.getDefaultVariant().encode(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Answers the challenge of the registry, requesting a bearer token to its token service when asked to.
+     */
+    private String authenticate(String challenge, String scope) throws IOException {
+        if (challenge == null || !challenge.regionMatches(true, 0, "Bearer", 0, "Bearer".length())) {
+            final String basic = basicAuthorization();
+            if (basic == null) {
+                throw new IllegalStateException(String.format("Registry %s requires credentials", this.url));
+            }
+            return basic;
+        }
+
+        final Map<String, String> parameters = new HashMap<>();
+        final Matcher matcher = CHALLENGE_PARAMETER.matcher(challenge);
+        while (matcher.find()) {
+            parameters.put(matcher.group(1), matcher.group(2));
+        }
+
+        final StringBuilder tokenUrl = new StringBuilder(parameters.get("realm"));
+        tokenUrl.append(tokenUrl.indexOf("?") < 0 ? '?' : '&');
+        if (parameters.containsKey("service")) {
+            tokenUrl.append("service=").append(URLEncoder.encode(parameters.get("service"), "UTF-8")).append('&');
+        }
+        for (String requestedScope : scope.split(" ")) {
+            tokenUrl.append("scope=").append(URLEncoder.encode(requestedScope, "UTF-8")).append('&');
+        }
+        tokenUrl.setLength(tokenUrl.length() - 1);
+
+        final HttpURLConnection connection = (HttpURLConnection) new URL(tokenUrl.toString()).openConnection();
+        final String basic = basicAuthorization();
+        if (basic != null) {
+            connection.setRequestProperty("Authorization", basic);
+        }
+
+        try {
+            check(connection, connection.getResponseCode(), String.format("get a token for %s", scope));
+            try (InputStream body = connection.getInputStream()) {
+                final JsonNode response = this.objectMapper.readTree(body);
+                final JsonNode token = response.has("token") ? response.get("token") : response.get("access_token");
+                if (token == null) {
+                    throw new IllegalStateException(String.format("Token service %s returned no token", parameters.get("realm")));
+                }
+
+                final String authorization = "Bearer " + token.asText();
+                this.tokens.put(scope, authorization);
+                return authorization;
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void check(HttpURLConnection connection, int status, String operation) throws IOException {
+        if (status < 200 || status >= 300) {
+            throw new IllegalStateException(String.format("Could not %s in %s: %d %s", operation, this.url, status,
+                    connection.getResponseMessage()));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+public class RemovalSummary {
+
+    private final int removedTags;
+    private final int removedImages;
+    private final long durationMillis;
+
+    public RemovalSummary(int removedTags, int removedImages, long durationMillis) {
+        this.removedTags = removedTags;
+        this.removedImages = removedImages;
+        this.durationMillis = durationMillis;
+    }
+
+    public int getRemovedTags() {
+        return removedTags;
+    }
+
+    public int getRemovedImages() {
+        return removedImages;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Removed %d tags and %d images in %d ms", removedTags, removedImages, durationMillis);
+    }
+}
@@ -18,8 +18,13 @@ package org.tomitribe.lieutenant.git;
 
 import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.events.RefsChangedListener;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
@@ -30,8 +35,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Git {
@@ -43,6 +50,8 @@ public class Git {
 
     private org.eclipse.jgit.api.Git git;
 
+    private Map<ObjectId, Set<String>> tagIndex;
+
     public Git(File rootDirectory) {
         super();
         if (rootDirectory == null) {
@@ -66,6 +75,13 @@ public class Git {
                     .setMustExist(true)
                     .build();
             this.git = new org.eclipse.jgit.api.Git(repository);
+
+            repository.getListenerList().addRefsChangedListener(new RefsChangedListener() {
+                @Override
+                public void onRefsChanged(RefsChangedEvent event) {
+                    invalidateTagIndex();
+                }
+            });
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
@@ -86,6 +102,10 @@ public class Git {
         ObjectId resolve = null;
         try {
             resolve = this.git.getRepository().resolve(branch);
+            if (resolve == null) {
+                // Repository without any commit yet
+                return null;
+            }
             return resolve.abbreviate(NUMBER_OF_CHARS_FOR_COMMIT_ID).name();
         } catch (IOException e) {
             throw new IllegalArgumentException(String.format("%s file does not exists or it is not a file.", resolve));
@@ -93,6 +113,40 @@ public class Git {
 
     }
 
+    /**
+     * Captures current branch, revision, status, branches and tags of current revision in one go, so callers do not
+     * need to query the repository again for every application.
+     */
+    public GitSnapshot snapshot() {
+        final String branch = currentBranch();
+        final String revision = trunkedLatestCommit(branch);
+        final Set<String> tags = revision == null ? Collections.<String>emptySet() : tagList(revision);
+
+        return new GitSnapshot(branch, revision, changedPaths(), branchList(), tags);
+    }
+
+    /**
+     * Walks the working tree once and returns the paths, relative to the root directory, of every file that is not
+     * committed as is: added, changed, modified, removed, missing, untracked or conflicting.
+     */
+    public Set<String> changedPaths() {
+
+        final Set<String> changedPaths = new HashSet<>();
+        try {
+            final Status status = this.git.status().call();
+            changedPaths.addAll(status.getAdded());
+            changedPaths.addAll(status.getChanged());
+            changedPaths.addAll(status.getModified());
+            changedPaths.addAll(status.getRemoved());
+            changedPaths.addAll(status.getMissing());
+            changedPaths.addAll(status.getUntracked());
+            changedPaths.addAll(status.getConflicting());
+        } catch (GitAPIException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return Collections.unmodifiableSet(changedPaths);
+    }
+
     public boolean isDirty() {
 
         boolean isDirty;
@@ -105,6 +159,27 @@ public class Git {
         return isDirty;
     }
 
+    /**
+     * Reads the paths of the files tracked in the index whose name starts with given prefix, without walking the
+     * working tree. Paths are relative to the root directory and use '/' as separator.
+     */
+    public Set<String> trackedFiles(String fileNamePrefix) {
+
+        final Set<String> trackedFiles = new HashSet<>();
+        try {
+            final DirCache dirCache = this.git.getRepository().readDirCache();
+            for (int i = 0; i < dirCache.getEntryCount(); i++) {
+                final String path = dirCache.getEntry(i).getPathString();
+                if (path.substring(path.lastIndexOf('/') + 1).startsWith(fileNamePrefix)) {
+                    trackedFiles.add(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return Collections.unmodifiableSet(trackedFiles);
+    }
+
     public Set<String> branchList() {
         final Set<String> branches = new HashSet<>();
 
@@ -130,35 +205,79 @@ public class Git {
         }
     }
 
+    /**
+     * @param commit commit id, possibly abbreviated.
+     * @return names of the tags pointing, once peeled, to given commit.
+     */
     public Set<String> tagList(String commit) {
 
-        final Set<String> tags = new HashSet<String>();
         final AbbreviatedObjectId abbreviatedCommit = AbbreviatedObjectId.fromString(commit);
+        final Repository repository = this.git.getRepository();
 
         try {
-            List<Ref> refs = this.git.tagList().call();
-
-            for (Ref ref : refs) {
+            // Notifies the listener, and so drops the index, when refs or packed-refs changed on disk
+            repository.scanForRepoChanges();
 
-                Ref peeledRef = this.git.getRepository().peel(ref);
-                final ObjectId tagCommit;
-                if (peeledRef.getPeeledObjectId() != null) {
-                    tagCommit = peeledRef.getPeeledObjectId();
-                } else {
-                    tagCommit = ref.getObjectId();
-                }
+            final Map<ObjectId, Set<String>> tagsByCommit = tagIndex();
 
-                if (tagCommit.startsWith(abbreviatedCommit)) {
-                    final String name = ref.getName();
-                    tags.add(name.substring(name.lastIndexOf('/') + 1, name.length()));
+            final Set<String> tags = new HashSet<>();
+            try (ObjectReader reader = repository.newObjectReader()) {
+                for (ObjectId candidate : reader.resolve(abbreviatedCommit)) {
+                    final Set<String> candidateTags = tagsByCommit.get(candidate);
+                    if (candidateTags != null) {
+                        tags.addAll(candidateTags);
+                    }
                 }
             }
+            return Collections.unmodifiableSet(tags);
 
-        } catch (GitAPIException e) {
+        } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
+    }
+
+    /**
+     * Peels every tag once and indexes their names by the commit they point to. Peeling is what makes tag lookups
+     * expensive on repositories with many tags, so the index is kept until the ref database changes.
+     */
+    private synchronized Map<ObjectId, Set<String>> tagIndex() throws IOException {
+
+        if (this.tagIndex != null) {
+            return this.tagIndex;
+        }
+
+        final Repository repository = this.git.getRepository();
+        final Map<ObjectId, Set<String>> tagsByCommit = new HashMap<>();
+
+        for (Ref ref : repository.getRefDatabase().getRefs(Constants.R_TAGS).values()) {
+
+            final Ref peeledRef = repository.peel(ref);
+            final ObjectId tagCommit;
+            if (peeledRef.getPeeledObjectId() != null) {
+                tagCommit = peeledRef.getPeeledObjectId();
+            } else {
+                tagCommit = ref.getObjectId();
+            }
+
+            if (tagCommit == null) {
+                continue;
+            }
+
+            Set<String> tags = tagsByCommit.get(tagCommit);
+            if (tags == null) {
+                tags = new HashSet<>();
+                tagsByCommit.put(tagCommit, tags);
+            }
+            final String name = ref.getName();
+            tags.add(name.substring(name.lastIndexOf('/') + 1, name.length()));
+        }
+
+        this.tagIndex = tagsByCommit;
+        return tagsByCommit;
+    }
 
-        return Collections.unmodifiableSet(tags);
+    private synchronized void invalidateTagIndex() {
+        this.tagIndex = null;
     }
 
     public static boolean isGit(File dir) {
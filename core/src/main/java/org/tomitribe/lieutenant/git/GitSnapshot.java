@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.git;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable view of the state of the repository, captured once per run and shared by every application.
+ */
+public class GitSnapshot {
+
+    private final String branch;
+    private final String revision;
+    private final TreeSet<String> changedPaths;
+    private final Set<String> branches;
+    private final Set<String> tags;
+
+    public GitSnapshot(String branch, String revision, Set<String> changedPaths, Set<String> branches, Set<String> tags) {
+        this.branch = branch;
+        this.revision = revision;
+        this.changedPaths = new TreeSet<>(changedPaths);
+        this.branches = Collections.unmodifiableSet(new HashSet<>(branches));
+        this.tags = Collections.unmodifiableSet(new HashSet<>(tags));
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return abbreviated commit id of current branch or null if there is no commit yet.
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    public boolean isDirty() {
+        return !changedPaths.isEmpty();
+    }
+
+    /**
+     * @param directory path relative to the root of the repository using '/' as separator, empty for the root itself.
+     * @return true if any file below given directory has local changes.
+     */
+    public boolean isDirty(String directory) {
+        if (directory.isEmpty()) {
+            return isDirty();
+        }
+
+        // changed paths are sorted, so the first one after the prefix tells whether any is below the directory
+        final String prefix = directory.endsWith("/") ? directory : directory + "/";
+        final String candidate = changedPaths.ceiling(prefix);
+        return candidate != null && candidate.startsWith(prefix);
+    }
+
+    public Set<String> getChangedPaths() {
+        return Collections.unmodifiableSet(changedPaths);
+    }
+
+    public Set<String> getBranches() {
+        return branches;
+    }
+
+    /**
+     * @return tags pointing to current revision.
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    @Override
+    public String toString() {
+        return "GitSnapshot{" +
+                "branch='" + branch + '\'' +
+                ", revision='" + revision + '\'' +
+                ", changedPaths=" + changedPaths.size() +
+                '}';
+    }
+}
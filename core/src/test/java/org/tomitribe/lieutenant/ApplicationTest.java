@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ApplicationTest {
+
+    @Test
+    public void shouldReadBaseImagesFromDockerfile() {
+        final Set<String> baseImages = Application.parseBaseImages(Arrays.asList(
+                "# FROM commented/image",
+                "FROM --platform=linux/amd64 myregistry:5000/team/base:1.0 AS builder",
+                "RUN make",
+                "FROM builder",
+                "from myimage/runtime@sha256:0123456789abcdef",
+                "FROM \\",
+                "    myimage/tools",
+                "FROM scratch"));
+
+        assertThat(baseImages.size(), is(3));
+        assertThat(baseImages, hasItems("myregistry:5000/team/base", "myimage/runtime", "myimage/tools"));
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BuildStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldPersistRecordedImages() {
+        final BuildState state = BuildState.load(this.folder.getRoot());
+        assertThat(state.imageId("myimage/hello-world:1234567"), is(nullValue()));
+
+        state.record("myimage/hello-world:1234567", "sha256:abcdef", null);
+        state.record("myimage/hello-world:latest", "sha256:012345", "cafe");
+        state.save();
+
+        final BuildState reloaded = BuildState.load(this.folder.getRoot());
+        assertThat(reloaded.imageId("myimage/hello-world:1234567"), is("sha256:abcdef"));
+        assertThat(reloaded.contextHash("myimage/hello-world:1234567"), is(nullValue()));
+        assertThat(reloaded.imageId("myimage/hello-world:latest"), is("sha256:012345"));
+        assertThat(reloaded.contextHash("myimage/hello-world:latest"), is("cafe"));
+
+        // state never shows up as a local change
+        assertThat(new File(this.folder.getRoot(), BuildState.DIRECTORY + "/.gitignore").isFile(), is(true));
+    }
+
+    @Test
+    public void shouldVerifyRecordedImagesAgainstDaemon() {
+        final BuildState state = BuildState.load(this.folder.getRoot());
+        state.record("myimage/hello-world:latest", "abcdef123456", "cafe");
+        state.record("myimage/hello-world-test:latest", "999999999999", "cafe");
+
+        final Map<String, String> daemonImageIds = new HashMap<>();
+        daemonImageIds.put("myimage/hello-world:latest", "sha256:abcdef1234567890");
+        daemonImageIds.put("myimage/hello-world-test:latest", "sha256:0123456789");
+
+        assertThat(state.verifiedImageId("myimage/hello-world:latest", daemonImageIds), is("abcdef123456"));
+        assertThat(state.verifiedImageId("myimage/hello-world-test:latest", daemonImageIds), is(nullValue()));
+        assertThat(state.imageId("myimage/hello-world-test:latest"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCompareAbbreviatedImageIds() {
+        assertThat(BuildState.sameImage("abcdef123456", "sha256:abcdef1234567890"), is(true));
+        assertThat(BuildState.sameImage("sha256:abcdef1234567890", "abcdef"), is(true));
+        assertThat(BuildState.sameImage("abcdef123456", "abcdef999999"), is(false));
+        assertThat(BuildState.sameImage("abcdef123456", null), is(false));
+    }
+
+}
@@ -16,22 +16,65 @@
  */
 package org.tomitribe.lieutenant;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.dockerjava.api.model.Image;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.tomitribe.lieutenant.concurrent.TaskFailedException;
+import org.tomitribe.lieutenant.docker.BuildContext;
 import org.tomitribe.lieutenant.docker.Docker;
+import org.tomitribe.lieutenant.docker.ImageIndex;
+import org.tomitribe.lieutenant.docker.LayerPush;
+import org.tomitribe.lieutenant.docker.PushReport;
+import org.tomitribe.lieutenant.docker.Registry;
+import org.tomitribe.lieutenant.docker.RemovalSummary;
 import org.tomitribe.lieutenant.git.Git;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -55,6 +98,14 @@ public class LieutenantTest {
     public void prepare() throws IOException {
         this.folder.newFolder(".git");
         when(usernameResolver.username()).thenReturn("alex");
+        when(git.snapshot()).thenCallRealMethod();
+        when(docker.pushedName(anyString())).thenAnswer(returnsFirstArg());
+        when(docker.push(anyString())).thenAnswer(new Answer<PushReport>() {
+            @Override
+            public PushReport answer(InvocationOnMock invocation) {
+                return new PushReport((String) invocation.getArguments()[0], null, 0, Collections.<LayerPush>emptyList());
+            }
+        });
     }
 
 
@@ -76,8 +127,8 @@ public class LieutenantTest {
         taggedImages.add("myimage/hello-world:foo_myfeature1_bar");
         taggedImages.add("myimage/hello-world:foo_myfeature2_bar");
 
-        when(this.docker.listImages("myimage/hello-world")).thenReturn(taggedImages);
-        when(this.docker.listImages("myimage/hello-world-test")).thenReturn(new HashSet<String>());
+        final ImageIndex imageIndex = imageIndex(taggedImages);
+        when(this.docker.imageIndex()).thenReturn(imageIndex);
 
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("22222222");
@@ -91,14 +142,76 @@ public class LieutenantTest {
 
         lieutenant.purge(Config.readFile(configFile));
 
-        verify(this.docker, times(1)).remove("myimage/hello-world:foo_11111111_bar");
-        verify(this.docker, times(1)).remove("myimage/hello-world:foo_mytag1_bar");
-        verify(this.docker, times(1)).remove("myimage/hello-world:foo_myfeature1_bar");
+        // Everything not related to current commit, tags or branches goes in a single batch
+        Set<String> removedTags = new HashSet<>();
+        removedTags.add("myimage/hello-world:foo_11111111_bar");
+        removedTags.add("myimage/hello-world:foo_mytag1_bar");
+        removedTags.add("myimage/hello-world:foo_myfeature1_bar");
+        verify(this.docker, times(1)).remove(removedTags, imageIndex, 1);
+
+        verify(this.docker, times(1)).imageIndex();
+
+    }
 
-        verify(this.docker, times(0)).remove("myimage/hello-world:foo_22222222_bar");
-        verify(this.docker, times(0)).remove("myimage/hello-world:foo_mytag2_bar");
-        verify(this.docker, times(0)).remove("myimage/hello-world:foo_myfeature2_bar");
+    @Test
+    public void shouldPurgeRegistryWithSameRules() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.docker.imageIndex()).thenReturn(imageIndex());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("22222222");
+        when(this.git.branchList()).thenReturn(tags("master"));
+        when(this.git.tagList("22222222")).thenReturn(tags("v2"));
+
+        final Registry registry = mock(Registry.class);
+        when(this.docker.registry(anyString())).thenReturn(registry);
+        when(registry.tags("myimage/hello-world")).thenReturn(tags("11111111", "22222222", "master", "v1", "v2"));
+        when(registry.tags("myimage/hello-world-test")).thenReturn(new HashSet<String>());
+        when(registry.remove(anyString(), anyCollectionOf(String.class), anyCollectionOf(String.class), anyInt()))
+                .thenReturn(new RemovalSummary(2, 2, 0));
+
+        final Config config = Config.readFile(configFile);
+        final LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setPurgeRegistry(true);
+        config.setLieutenantConfig(lieutenantConfig);
+        lieutenant.purge(config);
+
+        verify(registry).remove("myimage/hello-world", tags("11111111", "22222222", "master", "v1", "v2"),
+                tags("11111111", "v1"), 1);
+        verify(registry, never()).remove(eq("myimage/hello-world-test"), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyInt());
+    }
+
+    @Test
+    public void shouldPurgeRegistryRepositoryImagesArePushedTo() {
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
 
+        when(this.docker.imageIndex()).thenReturn(imageIndex());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("22222222");
+        when(this.git.branchList()).thenReturn(tags("master"));
+        when(this.git.tagList("22222222")).thenReturn(new HashSet<String>());
+
+        final Registry registry = mock(Registry.class);
+        when(this.docker.pushedName("app")).thenReturn("ci/app");
+        when(this.docker.registry("ci/app")).thenReturn(registry);
+        when(registry.tags("ci/app")).thenReturn(tags("11111111", "22222222"));
+        when(registry.remove(anyString(), anyCollectionOf(String.class), anyCollectionOf(String.class), anyInt()))
+                .thenReturn(new RemovalSummary(1, 1, 0));
+
+        final Config config = new Config();
+        config.addApplication("app", new Application("app", "Dockerfile"));
+        config.getLieutenantConfig().setPurgeRegistry(true);
+        lieutenant.purge(config);
+
+        verify(registry).remove("ci/app", tags("11111111", "22222222"), tags("11111111"), 1);
     }
 
     @Test
@@ -110,7 +223,7 @@ public class LieutenantTest {
         lieutenant.docker = this.docker;
         lieutenant.git = this.git;
 
-        when(this.git.isDirty()).thenReturn(false);
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -118,8 +231,6 @@ public class LieutenantTest {
         tags.add("first release");
         when(this.git.tagList("1234567")).thenReturn(tags);
 
-        when(this.docker.imageExists("myimage/hello-world", "1234567")).thenReturn(false);
-        when(this.docker.imageExists("myimage/hello-world-test", "1234567")).thenReturn(false);
 
         final Config config = Config.readFile(configFile);
         lieutenant.push(config);
@@ -127,11 +238,10 @@ public class LieutenantTest {
         verify(this.docker).build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "1234567");
         verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "1234567");
 
-        verify(this.docker).tag("myimage/hello-world", "1234567", "master");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "master");
-
-        verify(this.docker).tag("myimage/hello-world", "1234567", "first_release");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "first_release");
+        verify(this.docker).tag("myimage/hello-world:1234567",
+                tags("myimage/hello-world:master", "myimage/hello-world:first_release"));
+        verify(this.docker).tag("myimage/hello-world-test:1234567",
+                tags("myimage/hello-world-test:master", "myimage/hello-world-test:first_release"));
 
         verify(this.docker).push("myimage/hello-world:1234567");
         verify(this.docker).push("myimage/hello-world:master");
@@ -142,6 +252,40 @@ public class LieutenantTest {
         verify(this.docker).push("myimage/hello-world-test:first_release");
     }
 
+    @Test
+    public void shouldSkipPushOfImagesTheRegistryAlreadyHas() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        final Map<String, String> imageIds = imageIds("myimage/hello-world:1234567", "myimage/hello-world-test:1234567");
+        when(this.docker.resolveImageIds(tags("myimage/hello-world:1234567", "myimage/hello-world:master",
+                "myimage/hello-world-test:1234567", "myimage/hello-world-test:master"))).thenReturn(imageIds);
+        when(this.docker.isPushed("myimage/hello-world:1234567", imageIds.get("myimage/hello-world:1234567"))).thenReturn(true);
+        when(this.docker.isPushed("myimage/hello-world-test:1234567", imageIds.get("myimage/hello-world-test:1234567")))
+                .thenThrow(new IllegalStateException("registry unavailable"));
+
+        final Set<String> pushedImages = lieutenant.push(Config.readFile(configFile));
+
+        // a single listing of the daemon for every image to push
+        verify(this.docker).resolveImageIds(tags("myimage/hello-world:1234567", "myimage/hello-world:master",
+                "myimage/hello-world-test:1234567", "myimage/hello-world-test:master"));
+        verify(this.docker, never()).isPushed(eq("myimage/hello-world:master"), anyString());
+        verify(this.docker, never()).push("myimage/hello-world:1234567");
+        verify(this.docker).push("myimage/hello-world:master");
+        verify(this.docker).push("myimage/hello-world-test:1234567");
+        verify(this.docker).push("myimage/hello-world-test:master");
+        assertThat(pushedImages, hasItems("myimage/hello-world:1234567", "myimage/hello-world:master"));
+    }
+
     @Test
     public void shouldPushOnlyImagesMatchesRegExpFromConfigFile() {
         File configFile = new File(Thread.currentThread().getContextClassLoader()
@@ -151,7 +295,7 @@ public class LieutenantTest {
         lieutenant.docker = this.docker;
         lieutenant.git = this.git;
 
-        when(this.git.isDirty()).thenReturn(false);
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -159,8 +303,6 @@ public class LieutenantTest {
         tags.add("first release");
         when(this.git.tagList("1234567")).thenReturn(tags);
 
-        when(this.docker.imageExists("myimage/hello-world", "1234567")).thenReturn(false);
-        when(this.docker.imageExists("myimage/hello-world-test", "1234567")).thenReturn(false);
 
         final Config config = Config.readFile(configFile);
         LieutenantConfig lieutenantConfig = new LieutenantConfig();
@@ -171,11 +313,10 @@ public class LieutenantTest {
         verify(this.docker).build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "1234567");
         verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "1234567");
 
-        verify(this.docker).tag("myimage/hello-world", "1234567", "master");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "master");
-
-        verify(this.docker).tag("myimage/hello-world", "1234567", "first_release");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "first_release");
+        verify(this.docker).tag("myimage/hello-world:1234567",
+                tags("myimage/hello-world:master", "myimage/hello-world:first_release"));
+        verify(this.docker).tag("myimage/hello-world-test:1234567",
+                tags("myimage/hello-world-test:master", "myimage/hello-world-test:first_release"));
 
         verify(this.docker).push("myimage/hello-world:1234567");
         verify(this.docker).push("myimage/hello-world:master");
@@ -186,6 +327,119 @@ public class LieutenantTest {
         verify(this.docker, times(0)).push("myimage/hello-world-test:first_release");
     }
 
+    @Test
+    public void shouldPushImagesConcurrentlyAndReportFailedOnes() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        doThrow(new IllegalStateException("registry unavailable")).when(this.docker).push("myimage/hello-world-test:master");
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setPushJobs(3);
+        lieutenantConfig.setFailFast(false);
+        lieutenantConfig.setPushRetries(2);
+        lieutenantConfig.setPushRetryDelay(1);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        try {
+            lieutenant.push(config);
+            fail();
+        } catch (PushFailedException e) {
+            assertThat(e.getFailures().keySet(), is(Collections.singleton("myimage/hello-world-test:master")));
+            assertThat(e.getPushedImages(), is((Set<String>) new HashSet<>(Arrays.asList("myimage/hello-world:1234567",
+                    "myimage/hello-world:master", "myimage/hello-world-test:1234567"))));
+        }
+
+        verify(this.docker).push("myimage/hello-world:1234567");
+        verify(this.docker).push("myimage/hello-world:master");
+        verify(this.docker).push("myimage/hello-world-test:1234567");
+        verify(this.docker, times(3)).push("myimage/hello-world-test:master");
+    }
+
+    @Test
+    public void shouldRetryFailedPushes() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        doThrow(new IllegalStateException("registry unavailable"))
+                .doReturn(new PushReport("myimage/hello-world-test:master", null, 0, Collections.<LayerPush>emptyList()))
+                .when(this.docker).push("myimage/hello-world-test:master");
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setPushRetryDelay(1);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        final Set<String> pushedImages = lieutenant.push(config);
+
+        assertThat(pushedImages, hasItems("myimage/hello-world-test:master", "myimage/hello-world:master"));
+        verify(this.docker, times(2)).push("myimage/hello-world-test:master");
+    }
+
+    @Test
+    public void shouldPushImagesWhileOtherApplicationsAreStillBuilding() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(changes("README.md", "mytest/Dockerfile.test"));
+
+        final CountDownLatch firstPush = new CountDownLatch(1);
+        final AtomicInteger builds = new AtomicInteger();
+        final AtomicBoolean pushedDuringBuild = new AtomicBoolean();
+
+        doAnswer(new Answer<PushReport>() {
+            @Override
+            public PushReport answer(InvocationOnMock invocation) throws Throwable {
+                firstPush.countDown();
+                return new PushReport((String) invocation.getArguments()[0], null, 0, Collections.<LayerPush>emptyList());
+            }
+        }).when(this.docker).push(anyString());
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                // Second build only finishes if the image of the first one has been pushed meanwhile
+                if (builds.incrementAndGet() == 2) {
+                    pushedDuringBuild.set(firstPush.await(5, TimeUnit.SECONDS));
+                }
+                return null;
+            }
+        }).when(this.docker).build(any(File.class), anyBoolean(), anyString(), anyString());
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setPipeline(true);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        final Set<String> pushedImages = lieutenant.push(config);
+
+        assertThat(pushedDuringBuild.get(), is(true));
+        assertThat(pushedImages, hasItems("myimage/hello-world:latest", "myimage/hello-world-test:latest"));
+    }
+
     @Test
     public void shouldBuildImageFromConfigFile() {
         File configFile = new File(Thread.currentThread().getContextClassLoader()
@@ -195,7 +449,7 @@ public class LieutenantTest {
         lieutenant.docker = this.docker;
         lieutenant.git = this.git;
 
-        when(this.git.isDirty()).thenReturn(false);
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -203,8 +457,6 @@ public class LieutenantTest {
         tags.add("first release");
         when(this.git.tagList("1234567")).thenReturn(tags);
 
-        when(this.docker.imageExists("myimage/hello-world", "1234567")).thenReturn(false);
-        when(this.docker.imageExists("myimage/hello-world-test", "1234567")).thenReturn(false);
 
         final Config config = Config.readFile(configFile);
         lieutenant.build(config);
@@ -212,12 +464,507 @@ public class LieutenantTest {
         verify(this.docker).build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "1234567");
         verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "1234567");
 
-        verify(this.docker).tag("myimage/hello-world", "1234567", "master");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "master");
+        verify(this.docker).tag("myimage/hello-world:1234567",
+                tags("myimage/hello-world:master", "myimage/hello-world:first_release"));
+        verify(this.docker).tag("myimage/hello-world-test:1234567",
+                tags("myimage/hello-world-test:master", "myimage/hello-world-test:first_release"));
+
+    }
+
+    @Test
+    public void shouldTagBuiltImageById() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(tags("v1", "v2"));
+        when(this.docker.build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "1234567"))
+                .thenReturn("sha256:abcdef");
+
+        final Config config = Config.readFile(configFile);
+        lieutenant.build(config);
+
+        verify(this.docker).tag("sha256:abcdef",
+                tags("myimage/hello-world:master", "myimage/hello-world:v1", "myimage/hello-world:v2"));
+        verify(this.docker, never()).tag(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldOnlyBuildLatestForApplicationsWithLocalChanges() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(changes("README.md"));
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        final Set<String> createdImages = lieutenant.build(Config.readFile(configFile));
+
+        verify(this.docker).build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "latest");
+        verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "1234567");
+        verify(this.git, times(1)).changedPaths();
+
+        assertThat(createdImages, hasItems("myimage/hello-world:latest",
+                "myimage/hello-world-test:1234567", "myimage/hello-world-test:master"));
+    }
+
+    @Test
+    public void shouldBuildLatestForApplicationsBuiltFromChangedApplications() throws IOException {
+        Files.write(new File(this.folder.newFolder("parent"), "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("child"), "Dockerfile").toPath(), "FROM alex/parent".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("other"), "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(changes("parent/Dockerfile"));
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setWithBranches(false);
+        final Set<String> createdImages = lieutenant.build(lieutenantConfig, new Docker.DockerConfig());
+
+        assertThat(createdImages, hasItems("alex/parent:latest", "alex/child:latest", "alex/other:1234567"));
+    }
+
+    @Test
+    public void shouldBuildOnlySelectedApplicationsAndTheirDependents() throws IOException {
+        Files.write(new File(this.folder.newFolder("parent"), "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("child"), "Dockerfile").toPath(), "FROM alex/parent".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("other"), "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(changes("parent/Dockerfile"));
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        Config config = new Config();
+        config.addApplication("parent", new Application(null, "parent/Dockerfile"));
+        config.addApplication("child", new Application(null, "child/Dockerfile"));
+        config.addApplication("other", new Application(null, "other/Dockerfile"));
+        config.getLieutenantConfig().setWithBranches(false);
+
+        final Set<String> createdImages = lieutenant.build(config, Collections.singleton("parent"));
+
+        assertThat(createdImages.size(), is(2));
+        assertThat(createdImages, hasItems("alex/parent:latest", "alex/child:latest"));
+        verify(this.docker, times(0)).build(any(File.class), anyBoolean(), eq("alex/other"), anyString(), anyMapOf(String.class, String.class));
+        verify(this.docker, times(0)).build(any(File.class), anyBoolean(), eq("alex/other"), anyString());
+    }
+
+    @Test
+    public void shouldListFilesOfTheBuildContextOfEveryApplication() throws IOException {
+        final File app = this.folder.newFolder("app");
+        Files.write(new File(app, "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(app, ".dockerignore").toPath(), "*.log".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(app, "app.jar").toPath(), new byte[0]);
+        Files.write(new File(app, "build.log").toPath(), new byte[0]);
+        final File other = this.folder.newFolder("other");
+        Files.write(new File(other, "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        final Config config = new Config();
+        config.addApplication("app", new Application(null, "app/Dockerfile"));
+        config.addApplication("other", new Application(null, "other/Dockerfile"));
+
+        final Map<String, Set<File>> buildContextFiles = new Lieutenant(this.folder.getRoot()).buildContextFiles(config);
+
+        assertThat(buildContextFiles.get("app"), is((Set<File>) new HashSet<>(Arrays.asList(new File(app, "Dockerfile"),
+                new File(app, ".dockerignore"), new File(app, "app.jar")))));
+        assertThat(buildContextFiles.get("other"), is(Collections.singleton(new File(other, "Dockerfile"))));
+    }
+
+    @Test
+    public void shouldMountLayersOfParentImagesBeforePushingChildren() throws IOException {
+        Files.write(new File(this.folder.newFolder("parent"), "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("child"), "Dockerfile").toPath(), "FROM alex/parent".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
 
-        verify(this.docker).tag("myimage/hello-world", "1234567", "first_release");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "first_release");
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        final Registry registry = mock(Registry.class);
+        when(this.docker.registry(anyString())).thenReturn(registry);
+        when(registry.layers("alex/parent", "1234567")).thenReturn(Arrays.asList("sha256:base", "sha256:parent"));
+        when(registry.mount(anyString(), anyString(), anyString())).thenReturn(true);
+
+        Config config = new Config();
+        config.addApplication("parent", new Application(null, "parent/Dockerfile"));
+        config.addApplication("child", new Application(null, "child/Dockerfile"));
+        config.getLieutenantConfig().setWithBranches(false);
+        config.getLieutenantConfig().setPushJobs(2);
 
+        lieutenant.push(config);
+
+        final InOrder inOrder = inOrder(this.docker, registry);
+        inOrder.verify(this.docker).push("alex/parent:1234567");
+        inOrder.verify(registry).mount("alex/child", "sha256:base", "alex/parent");
+        inOrder.verify(registry).mount("alex/child", "sha256:parent", "alex/parent");
+        inOrder.verify(this.docker).push("alex/child:1234567");
+        verify(registry, never()).mount(eq("alex/parent"), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldPushChildrenWhenThePushOfTheirParentFails() throws IOException {
+        Files.write(new File(this.folder.newFolder("parent"), "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("child"), "Dockerfile").toPath(), "FROM alex/parent".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+        doThrow(new IllegalStateException("registry unavailable")).when(this.docker).push("alex/parent:1234567");
+
+        final Registry registry = mock(Registry.class);
+        when(this.docker.registry(anyString())).thenReturn(registry);
+
+        Config config = new Config();
+        config.addApplication("parent", new Application(null, "parent/Dockerfile"));
+        config.addApplication("child", new Application(null, "child/Dockerfile"));
+        config.getLieutenantConfig().setWithBranches(false);
+        config.getLieutenantConfig().setPushRetries(0);
+        config.getLieutenantConfig().setPushJobs(2);
+        config.getLieutenantConfig().setFailFast(false);
+
+        try {
+            lieutenant.push(config);
+            fail("Push should have failed");
+        } catch (PushFailedException e) {
+            assertThat(e.getFailures().keySet(), is(Collections.singleton("alex/parent:1234567")));
+            assertThat(e.getPushedImages(), is(Collections.singleton("alex/child:1234567")));
+        }
+
+        verify(this.docker).push("alex/child:1234567");
+        verify(registry, never()).mount(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldMountLayersIntoRepositoriesImagesArePushedTo() throws IOException {
+        Files.write(new File(this.folder.newFolder("parent"), "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("child"), "Dockerfile").toPath(), "FROM parent".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        final Registry registry = mock(Registry.class);
+        when(this.docker.pushedName(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return "ci/" + invocation.getArguments()[0];
+            }
+        });
+        when(this.docker.registry(anyString())).thenReturn(registry);
+        when(registry.layers("ci/parent", "1234567")).thenReturn(Arrays.asList("sha256:base", "sha256:parent"));
+        when(registry.mount(anyString(), anyString(), anyString())).thenReturn(true);
+
+        Config config = new Config();
+        config.addApplication("parent", new Application("parent", "parent/Dockerfile"));
+        config.addApplication("child", new Application("child", "child/Dockerfile"));
+        config.getLieutenantConfig().setWithBranches(false);
+        config.getLieutenantConfig().setPushJobs(2);
+
+        lieutenant.push(config);
+
+        verify(registry).mount("ci/child", "sha256:base", "ci/parent");
+        verify(registry).mount("ci/child", "sha256:parent", "ci/parent");
+    }
+
+    @Test
+    public void shouldSkipLatestRecordedInBuildStateWithoutSearchingLabels() throws IOException {
+
+        final File myproject = this.folder.newFolder("myproject");
+        Files.write(new File(myproject, "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(Collections.singleton("myproject/Dockerfile"));
+        when(this.docker.build(eq(new File(this.folder.getRoot(), "myproject/Dockerfile")), eq(false), eq("alex/myproject"), eq("latest"),
+                anyMapOf(String.class, String.class))).thenReturn("111111111111");
+
+        lieutenant.build(new LieutenantConfig(), new Docker.DockerConfig());
+
+        when(this.docker.resolveImageIds(anyCollectionOf(String.class)))
+                .thenReturn(Collections.singletonMap("alex/myproject:latest", "sha256:1111111111119"));
+
+        final Set<String> createdImages = lieutenant.build(new LieutenantConfig(), new Docker.DockerConfig());
+
+        assertThat(createdImages, hasItems("alex/myproject:latest"));
+        verify(this.docker, times(1)).build(any(File.class), anyBoolean(), anyString(), anyString(), anyMapOf(String.class, String.class));
+        verify(this.docker, times(1)).findImageByLabel(anyString(), anyString());
+        verify(this.docker, times(2)).resolveImageIds(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void shouldRebuildLatestOfChildrenWhenTheirParentIsRebuilt() throws IOException {
+        final File parent = this.folder.newFolder("parent");
+        Files.write(new File(parent, "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(this.folder.newFolder("child"), "Dockerfile").toPath(), "FROM alex/parent".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(changes("parent/Dockerfile", "child/Dockerfile"));
+        when(this.docker.build(any(File.class), anyBoolean(), eq("alex/parent"), eq("latest"), anyMapOf(String.class, String.class)))
+                .thenReturn("sha256:111111111111", "sha256:333333333333");
+        when(this.docker.build(any(File.class), anyBoolean(), eq("alex/child"), eq("latest"), anyMapOf(String.class, String.class)))
+                .thenReturn("sha256:222222222222", "sha256:444444444444");
+
+        final Config config = new Config();
+        config.addApplication("parent", new Application(null, "parent/Dockerfile"));
+        config.addApplication("child", new Application(null, "child/Dockerfile"));
+        lieutenant.build(config);
+
+        // Nothing changed, both latest images are reused
+        final Map<String, String> daemonImageIds = new HashMap<>();
+        daemonImageIds.put("alex/parent:latest", "sha256:111111111111");
+        daemonImageIds.put("alex/child:latest", "sha256:222222222222");
+        when(this.docker.resolveImageIds(anyCollectionOf(String.class))).thenReturn(daemonImageIds);
+        lieutenant.build(config);
+
+        verify(this.docker, times(1)).build(any(File.class), anyBoolean(), eq("alex/parent"), eq("latest"), anyMapOf(String.class, String.class));
+        verify(this.docker, times(1)).build(any(File.class), anyBoolean(), eq("alex/child"), eq("latest"), anyMapOf(String.class, String.class));
+
+        // The child context is the same, but it has to be built on top of the new parent
+        Files.write(new File(parent, "Dockerfile").toPath(), "FROM alpine".getBytes(StandardCharsets.UTF_8));
+        lieutenant.build(config);
+
+        verify(this.docker, times(2)).build(any(File.class), anyBoolean(), eq("alex/parent"), eq("latest"), anyMapOf(String.class, String.class));
+        verify(this.docker, times(2)).build(any(File.class), anyBoolean(), eq("alex/child"), eq("latest"), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void shouldOnlyRecordLatestImagesInBuildState() throws IOException {
+        final File myproject = this.folder.newFolder("myproject");
+        Files.write(new File(myproject, "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+        when(this.docker.build(any(File.class), anyBoolean(), eq("alex/myproject"), eq("1234567"), anyMapOf(String.class, String.class)))
+                .thenReturn("sha256:111111111111");
+
+        assertThat(lieutenant.build(new LieutenantConfig(), new Docker.DockerConfig()),
+                hasItems("alex/myproject:1234567", "alex/myproject:master"));
+
+        final BuildState state = BuildState.load(this.folder.getRoot());
+        assertThat(state.imageId("alex/myproject:1234567"), is(nullValue()));
+        assertThat(state.imageId("alex/myproject:master"), is(nullValue()));
+        verify(this.docker).tag("sha256:111111111111", Collections.singleton("alex/myproject:master"));
+    }
+
+    @Test
+    public void shouldBuildImagesConcurrentlyFromConfigFile() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(new HashSet<String>());
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setJobs(2);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        final Set<String> createdImages = lieutenant.build(config);
+
+        verify(this.docker).build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "1234567");
+        verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "1234567");
+
+        assertThat(createdImages, hasItems("myimage/hello-world:1234567", "myimage/hello-world:master",
+                "myimage/hello-world-test:1234567", "myimage/hello-world-test:master"));
+    }
+
+    @Test
+    public void shouldBuildParentImagesFirst() throws IOException {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Files.write(this.folder.newFile("Dockerfile").toPath(), "FROM myimage/hello-world-test:latest".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(changes("README.md", "mytest/Dockerfile.test"));
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setJobs(2);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        lieutenant.build(config);
+
+        InOrder inOrder = inOrder(this.docker);
+        inOrder.verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "latest");
+        inOrder.verify(this.docker).build(eq(new File(this.folder.getRoot(), "Dockerfile")), eq(false), eq("myimage/hello-world"), eq("latest"),
+                anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void shouldReportEveryFailedApplicationWhenNotFailFast() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(changes("README.md", "mytest/Dockerfile.test"));
+        doThrow(new IllegalStateException("daemon unavailable")).when(this.docker)
+                .build(any(File.class), anyBoolean(), anyString(), anyString());
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setFailFast(false);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        try {
+            lieutenant.build(config);
+            fail();
+        } catch (TaskFailedException e) {
+            assertThat(e.getFailures().keySet(), hasItems("hello-world", "hello-world-test"));
+        }
+    }
+
+    @Test
+    public void shouldKeepPushingBuiltImagesWhenAnotherApplicationFailsToBuild() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(changes("README.md", "mytest/Dockerfile.test"));
+        doThrow(new IllegalStateException("daemon unavailable")).when(this.docker)
+                .build(any(File.class), anyBoolean(), eq("myimage/hello-world-test"), anyString());
+
+        // still uploading when the failed build is reported
+        doAnswer(new Answer<PushReport>() {
+            @Override
+            public PushReport answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(200);
+                return new PushReport((String) invocation.getArguments()[0], null, 0, Collections.<LayerPush>emptyList());
+            }
+        }).when(this.docker).push(anyString());
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setPipeline(true);
+        lieutenantConfig.setFailFast(false);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        try {
+            lieutenant.push(config);
+            fail();
+        } catch (PushFailedException e) {
+            assertThat(e.getFailures().keySet(), is(Collections.singleton("hello-world-test")));
+            assertThat(e.getPushedImages(), is(Collections.singleton("myimage/hello-world:latest")));
+        }
+
+        verify(this.docker).push("myimage/hello-world:latest");
+    }
+
+    @Test
+    public void shouldReportPushedImagesWhenAPipelinedPushFails() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(changes("README.md"));
+        doThrow(new IllegalStateException("registry unavailable")).when(this.docker).push("myimage/hello-world-test:latest");
+
+        final Config config = Config.readFile(configFile);
+        LieutenantConfig lieutenantConfig = new LieutenantConfig();
+        lieutenantConfig.setPipeline(true);
+        lieutenantConfig.setFailFast(false);
+        lieutenantConfig.setPushRetries(0);
+        config.setLieutenantConfig(lieutenantConfig);
+
+        try {
+            lieutenant.push(config);
+            fail();
+        } catch (PushFailedException e) {
+            assertThat(e.getFailures().keySet(), is(Collections.singleton("myimage/hello-world-test:latest")));
+            assertThat(e.getPushedImages(), is(Collections.singleton("myimage/hello-world:latest")));
+        }
+    }
+
+    @Test
+    public void shouldQueryGitOnlyOncePerBuild() {
+        File configFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("lieutenant.yml").getFile());
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
+        when(this.git.currentBranch()).thenReturn("master");
+        when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
+        when(this.git.tagList("1234567")).thenReturn(Collections.singleton("first release"));
+
+        lieutenant.build(Config.readFile(configFile));
+
+        verify(this.git, times(1)).changedPaths();
+        verify(this.git, times(1)).currentBranch();
+        verify(this.git, times(1)).tagList("1234567");
     }
 
     @Test
@@ -229,7 +976,7 @@ public class LieutenantTest {
         lieutenant.docker = this.docker;
         lieutenant.git = this.git;
 
-        when(this.git.isDirty()).thenReturn(false);
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -237,8 +984,6 @@ public class LieutenantTest {
         tags.add("first release");
         when(this.git.tagList("1234567")).thenReturn(tags);
 
-        when(this.docker.imageExists("myimage/hello-world", "1234567")).thenReturn(false);
-        when(this.docker.imageExists("myimage/hello-world-test", "1234567")).thenReturn(false);
 
         final Config config = Config.readFile(configFile);
         LieutenantConfig lieutenantConfig = new LieutenantConfig();
@@ -251,11 +996,10 @@ public class LieutenantTest {
         verify(this.docker).build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "bar_1234567_foo");
         verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "bar_1234567_foo");
 
-        verify(this.docker).tag("myimage/hello-world", "1234567", "bar_master_foo");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "bar_master_foo");
-
-        verify(this.docker).tag("myimage/hello-world", "1234567", "bar_first_release_foo");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "bar_first_release_foo");
+        verify(this.docker).tag("myimage/hello-world:bar_1234567_foo",
+                tags("myimage/hello-world:bar_master_foo", "myimage/hello-world:bar_first_release_foo"));
+        verify(this.docker).tag("myimage/hello-world-test:bar_1234567_foo",
+                tags("myimage/hello-world-test:bar_master_foo", "myimage/hello-world-test:bar_first_release_foo"));
 
     }
 
@@ -292,7 +1036,7 @@ public class LieutenantTest {
         lieutenant.docker = this.docker;
         lieutenant.git = this.git;
 
-        when(this.git.isDirty()).thenReturn(true);
+        when(this.git.changedPaths()).thenReturn(changes("README.md", "mytest/Dockerfile.test"));
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -318,7 +1062,7 @@ public class LieutenantTest {
         lieutenant.docker = this.docker;
         lieutenant.git = this.git;
 
-        when(this.git.isDirty()).thenReturn(false);
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -326,8 +1070,8 @@ public class LieutenantTest {
         tags.add("first release");
         when(this.git.tagList("1234567")).thenReturn(tags);
 
-        when(this.docker.imageExists("myimage/hello-world", "bar_1234567_foo")).thenReturn(true);
-        when(this.docker.imageExists("myimage/hello-world-test", "bar_1234567_foo")).thenReturn(true);
+        when(this.docker.resolveImageIds(anyCollectionOf(String.class)))
+                .thenReturn(imageIds("myimage/hello-world:bar_1234567_foo", "myimage/hello-world-test:bar_1234567_foo"));
 
         final Config config = Config.readFile(configFile);
         LieutenantConfig lieutenantConfig = new LieutenantConfig();
@@ -337,6 +1081,10 @@ public class LieutenantTest {
 
         lieutenant.build(config);
 
+        // a single listing answers for every application
+        verify(this.docker, times(1)).resolveImageIds(anyCollectionOf(String.class));
+        verify(this.docker, times(0)).imageExists(anyString(), anyString());
+
         verify(this.docker, times(0)).build(new File(this.folder.getRoot(), "Dockerfile"), false, "myimage/hello-world", "bar_1234567_foo");
         verify(this.docker, times(0)).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), false, "myimage/hello-world-test", "bar_1234567_foo");
 
@@ -357,7 +1105,7 @@ public class LieutenantTest {
         lieutenant.docker = this.docker;
         lieutenant.git = this.git;
 
-        when(this.git.isDirty()).thenReturn(false);
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -365,8 +1113,8 @@ public class LieutenantTest {
         tags.add("first release");
         when(this.git.tagList("1234567")).thenReturn(tags);
 
-        when(this.docker.imageExists("myimage/hello-world", "bar_1234567_foo")).thenReturn(true);
-        when(this.docker.imageExists("myimage/hello-world-test", "bar_1234567_foo")).thenReturn(true);
+        when(this.docker.resolveImageIds(anyCollectionOf(String.class)))
+                .thenReturn(imageIds("myimage/hello-world:bar_1234567_foo", "myimage/hello-world-test:bar_1234567_foo"));
 
         final Config config = Config.readFile(configFile);
         LieutenantConfig lieutenantConfig = new LieutenantConfig();
@@ -380,11 +1128,10 @@ public class LieutenantTest {
         verify(this.docker).build(new File(this.folder.getRoot(), "Dockerfile"), true, "myimage/hello-world", "bar_1234567_foo");
         verify(this.docker).build(new File(this.folder.getRoot(), "mytest/Dockerfile.test"), true, "myimage/hello-world-test", "bar_1234567_foo");
 
-        verify(this.docker).tag("myimage/hello-world", "1234567", "bar_master_foo");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "bar_master_foo");
-
-        verify(this.docker).tag("myimage/hello-world", "1234567", "bar_first_release_foo");
-        verify(this.docker).tag("myimage/hello-world-test", "1234567", "bar_first_release_foo");
+        verify(this.docker).tag("myimage/hello-world:bar_1234567_foo",
+                tags("myimage/hello-world:bar_master_foo", "myimage/hello-world:bar_first_release_foo"));
+        verify(this.docker).tag("myimage/hello-world-test:bar_1234567_foo",
+                tags("myimage/hello-world-test:bar_master_foo", "myimage/hello-world-test:bar_first_release_foo"));
 
     }
 
@@ -402,7 +1149,7 @@ public class LieutenantTest {
         lieutenant.git = this.git;
         lieutenant.usernameResolver = usernameResolver;
 
-        when(this.git.isDirty()).thenReturn(false);
+        when(this.git.changedPaths()).thenReturn(Collections.<String>emptySet());
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
 
@@ -416,8 +1163,52 @@ public class LieutenantTest {
         lieutenantConfig.setPrefix("bar");
         lieutenant.build(lieutenantConfig, new Docker.DockerConfig());
 
-        verify(this.docker).build(new File(this.folder.getRoot(), "myproject/Dockerfile.test"), false, "alex/myproject.test", "bar_1234567_foo");
-        verify(this.docker).tag("alex/myproject.test", "1234567", "bar_master_foo");
+        verify(this.docker).build(eq(new File(this.folder.getRoot(), "myproject/Dockerfile.test")), eq(false), eq("alex/myproject.test"), eq("bar_1234567_foo"),
+                anyMapOf(String.class, String.class));
+        verify(this.docker).tag("alex/myproject.test:bar_1234567_foo",
+                tags("alex/myproject.test:bar_master_foo", "alex/myproject.test:bar_first_release_foo"));
+    }
+
+    @Test
+    public void shouldStampBuildContextHashOnImages() throws IOException {
+
+        final File myproject = this.folder.newFolder("myproject");
+        Files.write(new File(myproject, "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(Collections.singleton("myproject/Dockerfile"));
+
+        lieutenant.build(new LieutenantConfig(), new Docker.DockerConfig());
+
+        final String contextHash = new BuildContext(new File(myproject, "Dockerfile")).hash(1);
+        verify(this.docker).findImageByLabel(BuildContext.CONTEXT_HASH_LABEL, contextHash);
+        verify(this.docker).build(new File(this.folder.getRoot(), "myproject/Dockerfile"), false, "alex/myproject", "latest",
+                Collections.singletonMap(BuildContext.CONTEXT_HASH_LABEL, contextHash));
+    }
+
+    @Test
+    public void shouldSkipDirtyBuildWhenAnImageIsBuiltFromSameContext() throws IOException {
+
+        final File myproject = this.folder.newFolder("myproject");
+        Files.write(new File(myproject, "Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        Lieutenant lieutenant = new Lieutenant(this.folder.getRoot());
+        lieutenant.docker = this.docker;
+        lieutenant.git = this.git;
+        lieutenant.usernameResolver = usernameResolver;
+
+        when(this.git.changedPaths()).thenReturn(Collections.singleton("myproject/Dockerfile"));
+        when(this.docker.findImageByLabel(eq(BuildContext.CONTEXT_HASH_LABEL), anyString())).thenReturn("abcdef");
+
+        final Set<String> createdImages = lieutenant.build(new LieutenantConfig(), new Docker.DockerConfig());
+
+        verify(this.docker, times(0)).build(any(File.class), anyBoolean(), anyString(), anyString(), anyMapOf(String.class, String.class));
+        verify(this.docker).tagById("abcdef", "alex/myproject", "latest");
+        assertThat(createdImages, hasItems("alex/myproject:latest"));
     }
 
     @Test
@@ -440,7 +1231,8 @@ public class LieutenantTest {
         taggedImages.add("alex/myproject.test:foo_mytag1_bar");
         taggedImages.add("alex/myproject.test:foo_mytag2_bar");
 
-        when(this.docker.listImages("alex/myproject.test")).thenReturn(taggedImages);
+        final ImageIndex imageIndex = imageIndex(taggedImages);
+        when(this.docker.imageIndex()).thenReturn(imageIndex);
 
         when(this.git.currentBranch()).thenReturn("master");
         when(this.git.trunkedLatestCommit("master")).thenReturn("1234567");
@@ -455,10 +1247,44 @@ public class LieutenantTest {
         LieutenantConfig lieutenantConfig = new LieutenantConfig();
         lieutenant.purge(lieutenantConfig, new Docker.DockerConfig());
 
-        verify(this.docker, times(1)).remove("alex/myproject.test:foo_11111111_bar");
-        verify(this.docker, times(1)).remove("alex/myproject.test:foo_mytag1_bar");
+        Set<String> removedTags = new HashSet<>();
+        removedTags.add("alex/myproject.test:foo_11111111_bar");
+        removedTags.add("alex/myproject.test:foo_mytag1_bar");
+        verify(this.docker, times(1)).remove(removedTags, imageIndex, 1);
+    }
+
+    private static Set<String> changes(String... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+
+    private static Set<String> tags(String... imageTags) {
+        return new HashSet<>(Arrays.asList(imageTags));
+    }
+
+    /**
+     * @return listing of a daemon holding a distinct image for every repo tag.
+     */
+    private static ImageIndex imageIndex(String... repoTags) {
+        return imageIndex(Arrays.asList(repoTags));
+    }
+
+    private static ImageIndex imageIndex(Collection<String> repoTags) {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final List<Image> images = new ArrayList<>();
+        for (String repoTag : repoTags) {
+            final ObjectNode image = objectMapper.createObjectNode();
+            image.put("Id", "sha256:" + Integer.toHexString(repoTag.hashCode()));
+            image.putArray("RepoTags").add(repoTag);
+            images.add(objectMapper.convertValue(image, Image.class));
+        }
+        return new ImageIndex(images);
+    }
 
-        verify(this.docker, times(0)).remove("alex/myproject.test:foo_1234567_bar");
-        verify(this.docker, times(0)).remove("alex/myproject.test:foo_mytag2_bar");
+    private static Map<String, String> imageIds(String... refs) {
+        final Map<String, String> imageIds = new HashMap<>();
+        for (String ref : refs) {
+            imageIds.put(ref, "sha256:" + Integer.toHexString(ref.hashCode()));
+        }
+        return imageIds;
     }
 }
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TagMatcherTest {
+
+    private final TagMatcher tagMatcher = new TagMatcher(Arrays.asList("1234567", "master", "first_release"));
+
+    @Test
+    public void shouldMatchReferencesSurroundedByPrefixAndSuffix() {
+        assertThat(tagMatcher.matches("myimage/hello-world", "myimage/hello-world:1234567"), is(true));
+        assertThat(tagMatcher.matches("myimage/hello-world", "myimage/hello-world:foo_master_bar"), is(true));
+        assertThat(tagMatcher.matches("myimage/hello-world", "myimage/hello-world:foo_first_release"), is(true));
+    }
+
+    @Test
+    public void shouldNotMatchOtherReferences() {
+        assertThat(tagMatcher.matches("myimage/hello-world", "myimage/hello-world:foo_7654321_bar"), is(false));
+        assertThat(tagMatcher.matches("myimage/hello-world", "myimage/hello-world:foo_first_bar"), is(false));
+    }
+
+    @Test
+    public void shouldNotMatchTagsOfOtherImages() {
+        assertThat(tagMatcher.matches("myimage/hello-world", "myimage/hello-world-test:master"), is(false));
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class WatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Config config;
+
+    @Before
+    public void createApplications() throws IOException {
+        write("app/Dockerfile", "FROM busybox");
+        write("app/.dockerignore", "logs");
+        write("app/logs/app.log", "log");
+        write("app/nested/Dockerfile", "FROM busybox");
+        write("other/Dockerfile", "FROM busybox");
+
+        this.config = new Config();
+        this.config.addApplication("app", new Application("alex/app", "app"));
+        this.config.addApplication("nested", new Application("alex/nested", "app/nested/Dockerfile"));
+        this.config.addApplication("other", new Application("alex/other", "other"));
+        this.config.getLieutenantConfig().setWatchDebounce(50);
+    }
+
+    @Test
+    public void shouldFindApplicationsWhoseContextChanged() throws IOException {
+        try (Watcher watcher = new Watcher(mock(Lieutenant.class), this.folder.getRoot(), this.config)) {
+
+            assertThat(watcher.affectedApplications(Arrays.asList(path("app/Dockerfile"))), is(set("app")));
+            assertThat(watcher.affectedApplications(Arrays.asList(path("app/nested/run.sh"))), hasItems("app", "nested"));
+            assertThat(watcher.affectedApplications(Arrays.asList(path("app/logs/app.log"), path("other/.lieutenant/state"))).size(), is(0));
+            assertThat(watcher.affectedApplications(Arrays.asList(path("README.md"))).size(), is(0));
+            assertThat(watcher.affectedApplications(Arrays.asList(path("other"), path("app/.dockerignore"))), hasItems("app", "other"));
+        }
+    }
+
+    @Test
+    public void shouldRebuildChangedApplications() throws Exception {
+        final Lieutenant lieutenant = mock(Lieutenant.class);
+
+        final Watcher watcher = new Watcher(lieutenant, this.folder.getRoot(), this.config);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    watcher.run();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        thread.start();
+
+        try {
+            write("other/src/run.sh", "echo hello");
+            verify(lieutenant, timeout(10000)).build(eq(this.config), eq(set("other")));
+        } finally {
+            watcher.close();
+            thread.join(10000);
+        }
+    }
+
+    private Path path(String path) {
+        return new File(this.folder.getRoot(), path).getAbsoluteFile().toPath();
+    }
+
+    private File write(String path, String content) throws IOException {
+        final File file = new File(this.folder.getRoot(), path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Set<String> set(String... values) {
+        return new TreeSet<>(Arrays.asList(values));
+    }
+}
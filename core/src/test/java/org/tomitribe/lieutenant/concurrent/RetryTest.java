@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryTest {
+
+    @Test
+    public void shouldRetryUntilTaskSucceeds() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = new Retry("test", 3, 1, 10).call("task", new Callable<String>() {
+            @Override
+            public String call() {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new IllegalStateException("unavailable");
+                }
+                return "done";
+            }
+        });
+
+        assertThat(result, is("done"));
+        assertThat(attempts.get(), is(3));
+    }
+
+    @Test
+    public void shouldRethrowLastFailureOnceRetriesAreExhausted() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            new Retry("test", 2, 1, 10).call("task", new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalStateException("attempt " + attempts.incrementAndGet());
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("attempt 3"));
+        }
+    }
+
+    @Test
+    public void shouldGrowDelaysExponentiallyWithJitterUpToTheLimit() {
+        final Retry retry = new Retry("test", 10, 100, 1000);
+
+        for (int i = 0; i < 20; i++) {
+            assertBetween(retry.delay(0), 50, 100);
+            assertBetween(retry.delay(1), 100, 200);
+            assertBetween(retry.delay(2), 200, 400);
+            assertBetween(retry.delay(5), 500, 1000);
+            assertBetween(retry.delay(40), 500, 1000);
+        }
+    }
+
+    private static void assertBetween(long value, long min, long max) {
+        assertTrue(String.format("%d not in [%d, %d]", value, min, max), value >= min && value <= max);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.concurrent;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TaskPipelineTest {
+
+    @Test
+    public void shouldRunTasksWhileProducerIsStillSubmitting() throws InterruptedException {
+        final CountDownLatch firstTaskDone = new CountDownLatch(1);
+
+        final TaskPipeline<String> pipeline = new TaskPipeline<>("test", 1, true);
+        pipeline.submit("a", new Callable<String>() {
+            @Override
+            public String call() {
+                firstTaskDone.countDown();
+                return "A";
+            }
+        });
+
+        // Producer is still working but first task is already executed
+        assertThat(firstTaskDone.await(5, TimeUnit.SECONDS), is(true));
+
+        pipeline.submit("b", new Callable<String>() {
+            @Override
+            public String call() {
+                return "B";
+            }
+        });
+
+        final Map<String, String> results = pipeline.await();
+        assertThat(results.size(), is(2));
+        assertThat(results.get("b"), is("B"));
+    }
+
+    @Test
+    public void shouldCollectCompletedTasksWithoutWaitingForOthers() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final TaskPipeline<String> pipeline = new TaskPipeline<>("test", 2, false);
+        pipeline.submit("done", new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        });
+        pipeline.submit("running", new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                release.await();
+                return "running";
+            }
+        });
+
+        while (pipeline.completed().isEmpty()) {
+            Thread.sleep(10);
+        }
+        assertThat(pipeline.completed().keySet(), is(Collections.singleton("done")));
+
+        release.countDown();
+        assertThat(pipeline.await().size(), is(2));
+    }
+
+    @Test
+    public void shouldRejectNewTasksAfterFailureWhenFailFast() throws InterruptedException {
+        final TaskPipeline<String> pipeline = new TaskPipeline<>("test", 1, true);
+        pipeline.submit("a", new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalArgumentException("a");
+            }
+        });
+
+        try {
+            for (int i = 0; i < 50; i++) {
+                Thread.sleep(100);
+                pipeline.submit("b" + i, new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return "b";
+                    }
+                });
+            }
+            fail();
+        } catch (TaskFailedException e) {
+            assertThat(e.getFailures().keySet().iterator().next(), is("a"));
+        } finally {
+            pipeline.cancel();
+        }
+    }
+
+}
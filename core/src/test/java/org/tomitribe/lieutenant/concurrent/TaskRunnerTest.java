@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TaskRunnerTest {
+
+    @Test
+    public void shouldRunTasksConcurrently() {
+        final CountDownLatch allStarted = new CountDownLatch(3);
+
+        Map<String, Callable<String>> tasks = new HashMap<>();
+        for (final String name : new String[]{"a", "b", "c"}) {
+            tasks.put(name, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    allStarted.countDown();
+                    // Only completes if the three tasks are running at the same time
+                    if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("Tasks are not running concurrently");
+                    }
+                    return name.toUpperCase();
+                }
+            });
+        }
+
+        final Map<String, String> results = new TaskRunner("test", 3, true).run(tasks);
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get("a"), is("A"));
+        assertThat(results.get("c"), is("C"));
+    }
+
+    @Test
+    public void shouldStopAfterFirstFailureWhenFailFast() {
+        final AtomicInteger executed = new AtomicInteger();
+
+        Map<String, Callable<String>> tasks = new HashMap<>();
+        for (final String name : new String[]{"a", "b", "c"}) {
+            tasks.put(name, new Callable<String>() {
+                @Override
+                public String call() {
+                    executed.incrementAndGet();
+                    throw new IllegalArgumentException(name);
+                }
+            });
+        }
+
+        try {
+            new TaskRunner("test", 1, true).run(tasks);
+            fail();
+        } catch (TaskFailedException e) {
+            assertThat(e.getFailures().size(), is(1));
+            assertThat(executed.get(), is(1));
+        }
+    }
+
+    @Test
+    public void shouldCollectAllFailuresWhenNotFailFast() {
+        Map<String, Callable<String>> tasks = new HashMap<>();
+        tasks.put("ok", new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        });
+        for (final String name : new String[]{"a", "b"}) {
+            tasks.put(name, new Callable<String>() {
+                @Override
+                public String call() {
+                    throw new IllegalArgumentException(name);
+                }
+            });
+        }
+
+        try {
+            new TaskRunner("test", 2, false).run(tasks);
+            fail();
+        } catch (TaskFailedException e) {
+            assertThat(e.getFailures().size(), is(2));
+            assertThat(e.getFailures().get("a").getMessage(), is("a"));
+            assertThat(e.getFailures().get("b").getMessage(), is("b"));
+            assertThat(e.getResults().keySet(), is(Collections.singleton("ok")));
+        }
+    }
+
+    @Test
+    public void shouldStartDependentTaskOnceItsDependencyFinishes() {
+        final List<String> executionOrder = Collections.synchronizedList(new ArrayList<String>());
+
+        Map<String, Callable<String>> tasks = new HashMap<>();
+        for (final String name : new String[]{"base", "runtime", "app", "other"}) {
+            tasks.put(name, new Callable<String>() {
+                @Override
+                public String call() {
+                    executionOrder.add(name);
+                    return name;
+                }
+            });
+        }
+
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        dependencies.put("runtime", Collections.singleton("base"));
+        dependencies.put("app", Collections.singleton("runtime"));
+
+        final Map<String, String> results = new TaskRunner("test", 4, true).run(tasks, dependencies);
+
+        assertThat(results.size(), is(4));
+        assertThat(executionOrder.indexOf("base") < executionOrder.indexOf("runtime"), is(true));
+        assertThat(executionOrder.indexOf("runtime") < executionOrder.indexOf("app"), is(true));
+    }
+
+    @Test
+    public void shouldSkipDependentsOfFailedTask() {
+        final AtomicInteger executed = new AtomicInteger();
+
+        Map<String, Callable<String>> tasks = new HashMap<>();
+        tasks.put("base", new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalArgumentException("base");
+            }
+        });
+        tasks.put("app", new Callable<String>() {
+            @Override
+            public String call() {
+                executed.incrementAndGet();
+                return "app";
+            }
+        });
+
+        try {
+            new TaskRunner("test", 2, false).run(tasks, Collections.singletonMap("app", Collections.singleton("base")));
+            fail();
+        } catch (TaskFailedException e) {
+            assertThat(e.getFailures().keySet(), hasItems("base", "app"));
+            assertThat(executed.get(), is(0));
+        }
+    }
+
+    @Test
+    public void shouldRunDependentsOfFailedTaskWhenDependenciesOnlyOrderTasks() {
+        final AtomicInteger executed = new AtomicInteger();
+
+        Map<String, Callable<String>> tasks = new HashMap<>();
+        tasks.put("base", new Callable<String>() {
+            @Override
+            public String call() {
+                throw new IllegalArgumentException("base");
+            }
+        });
+        tasks.put("app", new Callable<String>() {
+            @Override
+            public String call() {
+                executed.incrementAndGet();
+                return "app";
+            }
+        });
+
+        try {
+            new TaskRunner("test", 2, false).run(tasks, Collections.singletonMap("app", Collections.singleton("base")), false);
+            fail();
+        } catch (TaskFailedException e) {
+            assertThat(e.getFailures().keySet(), is(Collections.singleton("base")));
+            assertThat(e.getResults().get("app"), is((Object) "app"));
+            assertThat(executed.get(), is(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldDetectCyclesBeforeRunningAnyTask() {
+        Map<String, Callable<String>> tasks = new HashMap<>();
+        for (final String name : new String[]{"a", "b", "c"}) {
+            tasks.put(name, new Callable<String>() {
+                @Override
+                public String call() {
+                    fail();
+                    return name;
+                }
+            });
+        }
+
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        dependencies.put("a", Collections.singleton("b"));
+        dependencies.put("b", Collections.singleton("a"));
+
+        new TaskRunner("test", 1, true).run(tasks, dependencies);
+    }
+
+}
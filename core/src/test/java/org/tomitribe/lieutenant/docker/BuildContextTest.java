@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class BuildContextTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldListFilesNotExcludedByDockerignore() throws IOException {
+        write("Dockerfile", "FROM busybox");
+        write(".dockerignore", "target\nDockerfile\n*.log");
+        write("src/Main.java", "class Main {}");
+        write("target/Main.class", "binary");
+        write("build.log", "log");
+
+        final BuildContext buildContext = new BuildContext(this.folder.getRoot());
+
+        assertThat(buildContext.files(), is(Arrays.asList(".dockerignore", "Dockerfile", "src/Main.java")));
+    }
+
+    @Test
+    public void shouldOnlyChangeHashWhenSentFilesChange() throws IOException {
+        write("Dockerfile", "FROM busybox");
+        write(".dockerignore", "*.log");
+        write("src/Main.java", "class Main {}");
+
+        final BuildContext buildContext = new BuildContext(new File(this.folder.getRoot(), "Dockerfile"));
+        final String hash = buildContext.hash(2);
+
+        assertThat(buildContext.hash(1), is(hash));
+
+        write("build.log", "log");
+        assertThat(buildContext.hash(2), is(hash));
+
+        write("src/Main.java", "class Main { }");
+        assertThat(buildContext.hash(2), is(not(hash)));
+    }
+
+    @Test
+    public void shouldArchiveContextWithLabelledDockerfile() throws IOException {
+        write("Dockerfile.test", "FROM busybox");
+        write("src/Main.java", "class Main {}");
+
+        final BuildContext buildContext = new BuildContext(new File(this.folder.getRoot(), "Dockerfile.test"));
+        final Map<String, String> entries = entries(buildContext.stream(Collections.singletonMap(BuildContext.CONTEXT_HASH_LABEL, "1234")));
+
+        assertThat(entries.get("src/Main.java"), is("class Main {}"));
+        assertThat(entries.get("Dockerfile.test"), is("FROM busybox"));
+        assertThat(entries.get("Dockerfile"), containsString("FROM busybox"));
+        assertThat(entries.get("Dockerfile"), containsString("LABEL \"" + BuildContext.CONTEXT_HASH_LABEL + "\"=\"1234\""));
+    }
+
+    @Test
+    public void shouldArchiveSameContextToSameBytes() throws IOException {
+        write("Dockerfile", "FROM busybox");
+        write("run.sh", "echo hello");
+        write("src/b.txt", "b");
+        write("src/a.txt", "a");
+        new File(this.folder.getRoot(), "run.sh").setExecutable(true);
+
+        final BuildContext buildContext = new BuildContext(this.folder.getRoot());
+        final ByteArrayOutputStream first = new ByteArrayOutputStream();
+        buildContext.write(first, Collections.<String, String>emptyMap());
+
+        new File(this.folder.getRoot(), "src/a.txt").setLastModified(System.currentTimeMillis() - 3600000);
+        final ByteArrayOutputStream second = new ByteArrayOutputStream();
+        buildContext.write(second, Collections.<String, String>emptyMap());
+
+        assertThat(Arrays.equals(first.toByteArray(), second.toByteArray()), is(true));
+
+        final List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new ByteArrayInputStream(first.toByteArray()))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                names.add(entry.getName());
+                assertThat(entry.getModTime().getTime(), is(0L));
+                assertThat(entry.getMode(), is("run.sh".equals(entry.getName()) ? 0100755 : 0100644));
+            }
+        }
+        assertThat(names, is(Arrays.asList("Dockerfile", "run.sh", "src/a.txt", "src/b.txt")));
+    }
+
+    @Test
+    public void shouldArchiveSymbolicLinkToDirectoryAsLink() throws IOException {
+        write("Dockerfile", "FROM busybox");
+        write("shared/a.txt", "a");
+        Files.createSymbolicLink(new File(this.folder.getRoot(), "current").toPath(), new File("shared").toPath());
+
+        final BuildContext buildContext = new BuildContext(this.folder.getRoot());
+        final Map<String, TarArchiveEntry> entries = tarEntries(buildContext);
+
+        assertThat(entries.get("current").isSymbolicLink(), is(true));
+        assertThat(entries.get("current").getLinkName(), is("shared"));
+        assertThat(entries.containsKey("current/a.txt"), is(false));
+        assertThat(entries.get("shared/a.txt").isFile(), is(true));
+        assertThat(buildContext.hash(1), is(buildContext.hash(2)));
+    }
+
+    @Test
+    public void shouldArchiveSymbolicLinkToFileAsLink() throws IOException {
+        write("Dockerfile", "FROM busybox");
+        write("app-1.0.jar", "jar");
+        write("app-2.0.jar", "jar");
+        final File link = new File(this.folder.getRoot(), "app.jar");
+        Files.createSymbolicLink(link.toPath(), new File("app-1.0.jar").toPath());
+
+        final BuildContext buildContext = new BuildContext(this.folder.getRoot());
+        final Map<String, TarArchiveEntry> entries = tarEntries(buildContext);
+
+        assertThat(entries.get("app.jar").isSymbolicLink(), is(true));
+        assertThat(entries.get("app.jar").getLinkName(), is("app-1.0.jar"));
+        assertThat(entries.get("app.jar").getSize(), is(0L));
+
+        // pointing the link elsewhere changes the context
+        final String hash = buildContext.hash(1);
+        Files.delete(link.toPath());
+        Files.createSymbolicLink(link.toPath(), new File("app-2.0.jar").toPath());
+        assertThat(buildContext.hash(1), is(not(hash)));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldReportFailuresWhileStreaming() throws IOException {
+        final BuildContext buildContext = new BuildContext(new File(this.folder.getRoot(), "Dockerfile"));
+        entries(buildContext.stream(Collections.<String, String>emptyMap()));
+    }
+
+    private static Map<String, String> entries(InputStream archive) throws IOException {
+        final Map<String, String> entries = new HashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(archive)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                final ByteArrayOutputStream content = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[1024];
+                int read;
+                while ((read = tar.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+                entries.put(entry.getName(), new String(content.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    private static Map<String, TarArchiveEntry> tarEntries(BuildContext buildContext) throws IOException {
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        buildContext.write(archive, Collections.<String, String>emptyMap());
+
+        final Map<String, TarArchiveEntry> entries = new HashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                entries.put(entry.getName(), entry);
+            }
+        }
+        return entries;
+    }
+
+    private void write(String path, String content) throws IOException {
+        final File file = new File(this.folder.getRoot(), path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.DockerClientException;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.BuildImageCmd;
+import com.github.dockerjava.api.command.PushImageCmd;
+import com.github.dockerjava.api.model.BuildResponseItem;
+import com.github.dockerjava.api.model.PushResponseItem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerAsyncTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Docker docker;
+    private DockerClient dockerClient;
+
+    @Before
+    public void mockDockerClient() throws IOException {
+        Files.write(this.folder.newFile("Dockerfile").toPath(), "FROM busybox".getBytes(StandardCharsets.UTF_8));
+
+        this.dockerClient = mock(DockerClient.class);
+        this.docker = new Docker.DockerConfig().build();
+        this.docker.dockerClient = this.dockerClient;
+    }
+
+    @Test
+    public void shouldReportBuildStepsAndCompleteWithImageId() throws Exception {
+        final CountDownLatch respond = new CountDownLatch(1);
+        mockBuild(respond, build("{\"stream\":\"Step 1 : FROM busybox\\n\"}"),
+                build("{\"stream\":\"Successfully built 1234567\\n\"}"));
+
+        final RecordingListener listener = new RecordingListener();
+        final DockerOperation<String> build = this.docker.buildAsync(this.folder.getRoot(), false, "alex/app", "latest",
+                Collections.<String, String>emptyMap(), listener);
+
+        // the caller is not blocked while the daemon builds
+        assertThat(build.isDone(), is(false));
+        respond.countDown();
+
+        assertThat(build.get(10, TimeUnit.SECONDS), is("1234567"));
+        assertThat(listener.events, is(Arrays.asList("step alex/app:latest Step 1 : FROM busybox",
+                "step alex/app:latest Successfully built 1234567", "success alex/app:latest 1234567")));
+    }
+
+    @Test
+    public void shouldFailBuildReportingErrors() throws Exception {
+        mockBuild(new CountDownLatch(0), build("{\"stream\":\"Step 1 : FROM missing\\n\"}"),
+                build("{\"error\":\"not found\",\"errorDetail\":{\"message\":\"image missing not found\"}}"));
+
+        final RecordingListener listener = new RecordingListener();
+        final DockerOperation<String> build = this.docker.buildAsync(this.folder.getRoot(), false, "alex/app", "latest",
+                Collections.<String, String>emptyMap(), listener);
+
+        try {
+            build.get(10, TimeUnit.SECONDS);
+            fail("Build should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(DockerClientException.class));
+            assertThat(e.getCause().getMessage(), containsString("image missing not found"));
+        }
+        assertThat(listener.events.get(listener.events.size() - 1), is("failure alex/app:latest"));
+    }
+
+    @Test
+    public void shouldReportLayerProgressAndDigestOfPushes() throws Exception {
+        final PushImageCmd pushImageCmd = mock(PushImageCmd.class);
+        when(pushImageCmd.withTag(anyString())).thenReturn(pushImageCmd);
+        when(this.dockerClient.pushImageCmd("alex/app")).thenReturn(pushImageCmd);
+        doAnswer(respond(new CountDownLatch(0),
+                push("{\"status\":\"Layer already exists\",\"id\":\"a1\"}"),
+                push("{\"status\":\"Pushing\",\"id\":\"b2\",\"progressDetail\":{\"current\":512,\"total\":1024}}"),
+                push("{\"status\":\"1.0: digest: sha256:abcd size: 1234\"}")))
+                .when(pushImageCmd).exec(any(ResultCallback.class));
+
+        final RecordingListener listener = new RecordingListener();
+        final DockerOperation<String> push = this.docker.pushAsync("alex/app:1.0", listener);
+
+        assertThat(push.get(10, TimeUnit.SECONDS), is("sha256:abcd"));
+        assertThat(listener.events, is(Arrays.asList("progress alex/app:1.0 a1 Layer already exists 0/0",
+                "progress alex/app:1.0 b2 Pushing 512/1024", "progress alex/app:1.0 null 1.0: digest: sha256:abcd size: 1234 0/0",
+                "success alex/app:1.0 sha256:abcd")));
+    }
+
+    @Test
+    public void shouldMeasureUploadOfEveryLayer() throws Exception {
+        final PushImageCmd pushImageCmd = mock(PushImageCmd.class);
+        when(pushImageCmd.withTag(anyString())).thenReturn(pushImageCmd);
+        when(this.dockerClient.pushImageCmd("alex/app")).thenReturn(pushImageCmd);
+        doAnswer(respond(new CountDownLatch(0),
+                push("{\"status\":\"Preparing\",\"id\":\"a1\"}"),
+                push("{\"status\":\"Preparing\",\"id\":\"b2\"}"),
+                push("{\"status\":\"Layer already exists\",\"id\":\"a1\"}"),
+                push("{\"status\":\"Pushing\",\"id\":\"b2\",\"progressDetail\":{\"current\":512,\"total\":1024}}"),
+                push("{\"status\":\"Pushed\",\"id\":\"b2\"}"),
+                push("{\"status\":\"1.0: digest: sha256:abcd size: 1234\"}")))
+                .when(pushImageCmd).exec(any(ResultCallback.class));
+
+        final PushReport report = this.docker.push("alex/app:1.0");
+
+        assertThat(report.getImage(), is("alex/app:1.0"));
+        assertThat(report.getDigest(), is("sha256:abcd"));
+        assertThat(report.getLayers().size(), is(2));
+        assertThat(report.getExistingLayers(), is(1));
+        assertThat(report.getUploadedLayers(), is(1));
+        assertThat(report.getUploadedBytes(), is(1024L));
+        assertThat(report.getSlowestLayer().getId(), is("b2"));
+    }
+
+    @Test
+    public void shouldCloseDaemonStreamWhenCancelled() throws Exception {
+        final Closeable stream = mock(Closeable.class);
+        final BuildImageCmd buildImageCmd = buildImageCmd();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                final ResultCallback<BuildResponseItem> callback = (ResultCallback<BuildResponseItem>) invocation.getArguments()[0];
+                callback.onStart(stream);
+                return callback;
+            }
+        }).when(buildImageCmd).exec(any(ResultCallback.class));
+
+        final DockerOperation<String> build = this.docker.buildAsync(this.folder.getRoot(), false, "alex/app", "latest",
+                Collections.<String, String>emptyMap(), DockerListener.NONE);
+
+        assertThat(build.cancel(true), is(true));
+        assertThat(build.isCancelled(), is(true));
+        verify(stream).close();
+    }
+
+    private void mockBuild(CountDownLatch respond, BuildResponseItem... items) {
+        final BuildImageCmd buildImageCmd = buildImageCmd();
+        doAnswer(respond(respond, items)).when(buildImageCmd).exec(any(ResultCallback.class));
+    }
+
+    private BuildImageCmd buildImageCmd() {
+        final BuildImageCmd buildImageCmd = mock(BuildImageCmd.class);
+        when(buildImageCmd.withNoCache(anyBoolean())).thenReturn(buildImageCmd);
+        when(buildImageCmd.withTag(anyString())).thenReturn(buildImageCmd);
+        when(this.dockerClient.buildImageCmd(any(InputStream.class))).thenReturn(buildImageCmd);
+        return buildImageCmd;
+    }
+
+    /**
+     * Streams the items from another thread, as docker-java does, once allowed to.
+     */
+    private static <I> Answer<Object> respond(final CountDownLatch respond, final I... items) {
+        return new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                final ResultCallback<I> callback = (ResultCallback<I>) invocation.getArguments()[0];
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            respond.await();
+                        } catch (InterruptedException e) {
+                            callback.onError(e);
+                            return;
+                        }
+                        for (I item : items) {
+                            callback.onNext(item);
+                        }
+                        callback.onComplete();
+                    }
+                }).start();
+                return callback;
+            }
+        };
+    }
+
+    private static BuildResponseItem build(String json) throws IOException {
+        return new ObjectMapper().readValue(json, BuildResponseItem.class);
+    }
+
+    private static PushResponseItem push(String json) throws IOException {
+        return new ObjectMapper().readValue(json, PushResponseItem.class);
+    }
+
+    private static class RecordingListener implements DockerListener {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onBuildStep(String image, String step) {
+            this.events.add("step " + image + " " + step);
+        }
+
+        @Override
+        public void onProgress(String image, String layer, String status, long current, long total) {
+            this.events.add(String.format("progress %s %s %s %d/%d", image, layer, status, current, total));
+        }
+
+        @Override
+        public void onSuccess(String image, String result) {
+            this.events.add("success " + image + " " + result);
+        }
+
+        @Override
+        public void onFailure(String image, Throwable failure) {
+            this.events.add("failure " + image);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DockerClientRegistryTest {
+
+    @Test
+    public void shouldShareClientOfSameConfiguration() {
+        final Docker docker = new Docker.DockerConfig().withUri("http://localhost:2375").withReadTimeout(1000).build();
+        final Docker other = new Docker.DockerConfig().withUri("http://localhost:2375").withReadTimeout(1000).build();
+
+        assertThat(other, is(not(sameInstance(docker))));
+        assertThat(other.dockerClient, is(sameInstance(docker.dockerClient)));
+    }
+
+    @Test
+    public void shouldCreateClientPerTransportSettings() {
+        final Docker docker = new Docker.DockerConfig().withUri("http://localhost:2375").build();
+
+        assertThat(new Docker.DockerConfig().withUri("http://localhost:2376").build().dockerClient,
+                is(not(sameInstance(docker.dockerClient))));
+        assertThat(new Docker.DockerConfig().withUri("http://localhost:2375").withMaxConnections(4).build().dockerClient,
+                is(not(sameInstance(docker.dockerClient))));
+        assertThat(new Docker.DockerConfig().withUri("http://localhost:2375").withConnectTimeout(500).build().dockerClient,
+                is(not(sameInstance(docker.dockerClient))));
+    }
+
+    @Test
+    public void shouldReadTransportSettingsFromProperties() {
+        final Properties properties = new Properties();
+        properties.put("docker.io.url", "http://localhost:2375");
+
+        final Properties transport = new Properties();
+        transport.putAll(properties);
+        transport.put(Docker.DockerConfig.READ_TIMEOUT, "1000");
+        transport.put(Docker.DockerConfig.MAX_CONNECTIONS, "8");
+
+        final Docker docker = new Docker.DockerConfig().withProperties(transport).build();
+
+        assertThat(docker.dockerClient, is(sameInstance(new Docker.DockerConfig().withProperties(properties)
+                .withReadTimeout(1000).withMaxConnections(8).build().dockerClient)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRequireAtLeastOneConnection() {
+        new Docker.DockerConfig().withMaxConnections(0);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DockerIgnoreTest {
+
+    @Test
+    public void shouldExcludeMatchingFilesAndDirectories() {
+        final DockerIgnore dockerIgnore = new DockerIgnore(Arrays.asList("# comment", "", "target", "*.log", "/docs/*.md"));
+
+        assertThat(dockerIgnore.isExcluded("target"), is(true));
+        assertThat(dockerIgnore.isExcluded("target/classes/A.class"), is(true));
+        assertThat(dockerIgnore.isExcluded("build.log"), is(true));
+        assertThat(dockerIgnore.isExcluded("logs/build.log"), is(false));
+        assertThat(dockerIgnore.isExcluded("docs/README.md"), is(true));
+        assertThat(dockerIgnore.isExcluded("README.md"), is(false));
+        assertThat(dockerIgnore.isExcluded("src/Main.java"), is(false));
+    }
+
+    @Test
+    public void shouldMatchAnyNumberOfDirectoriesWithDoubleStar() {
+        final DockerIgnore dockerIgnore = new DockerIgnore(Arrays.asList("**/*.tmp", "src/**/generated"));
+
+        assertThat(dockerIgnore.isExcluded("a.tmp"), is(true));
+        assertThat(dockerIgnore.isExcluded("a/b/c.tmp"), is(true));
+        assertThat(dockerIgnore.isExcluded("src/generated/A.java"), is(true));
+        assertThat(dockerIgnore.isExcluded("src/main/java/generated/A.java"), is(true));
+        assertThat(dockerIgnore.isExcluded("src/main/java/A.java"), is(false));
+    }
+
+    @Test
+    public void shouldIncludeBackExceptionsWithLastMatchingRuleWinning() {
+        final DockerIgnore dockerIgnore = new DockerIgnore(Arrays.asList("*.md", "!README.md", "README*.md"));
+
+        assertThat(dockerIgnore.isExcluded("CHANGES.md"), is(true));
+        assertThat(dockerIgnore.isExcluded("README.md"), is(true));
+
+        final DockerIgnore withException = new DockerIgnore(Arrays.asList("target", "!target/app.jar"));
+        assertThat(withException.isExcluded("target/app.jar"), is(false));
+        assertThat(withException.isExcluded("target/classes"), is(true));
+        assertThat(withException.isPrunable("target"), is(false));
+        assertThat(new DockerIgnore(Arrays.asList("target")).isPrunable("target"), is(true));
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.ConflictException;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.ListImagesCmd;
+import com.github.dockerjava.api.command.RemoveImageCmd;
+import com.github.dockerjava.api.model.Image;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerRemovalTest {
+
+    private Docker docker;
+    private DockerClient dockerClient;
+    private RemoveImageCmd removeImageCmd;
+
+    @Before
+    public void mockDockerClient() throws IOException {
+        this.dockerClient = mock(DockerClient.class);
+
+        final ListImagesCmd listImagesCmd = mock(ListImagesCmd.class);
+        when(listImagesCmd.withShowAll(anyBoolean())).thenReturn(listImagesCmd);
+        when(listImagesCmd.exec()).thenReturn(Arrays.asList(
+                image("{\"Id\":\"1\",\"RepoTags\":[\"myimage/hello-world:1111111\",\"myimage/hello-world:mytag1\"]}"),
+                image("{\"Id\":\"2\",\"RepoTags\":[\"myimage/hello-world:2222222\",\"myimage/hello-world:master\"]}")));
+        when(this.dockerClient.listImagesCmd()).thenReturn(listImagesCmd);
+
+        this.removeImageCmd = mock(RemoveImageCmd.class);
+        when(this.removeImageCmd.withForce(anyBoolean())).thenReturn(this.removeImageCmd);
+        when(this.dockerClient.removeImageCmd(anyString())).thenReturn(this.removeImageCmd);
+
+        this.docker = new Docker.DockerConfig().build();
+        this.docker.dockerClient = this.dockerClient;
+    }
+
+    @Test
+    public void shouldRemoveImageByIdWhenAllItsTagsAreRemoved() {
+        final RemovalSummary summary = this.docker.remove(Arrays.asList("myimage/hello-world:1111111",
+                "myimage/hello-world:mytag1", "myimage/hello-world:2222222"), this.docker.imageIndex(), 2);
+
+        verify(this.dockerClient, times(1)).listImagesCmd();
+        verify(this.dockerClient, times(1)).removeImageCmd("1");
+        verify(this.removeImageCmd, never()).withForce(anyBoolean());
+        verify(this.dockerClient, never()).removeImageCmd("myimage/hello-world:1111111");
+        verify(this.dockerClient, never()).removeImageCmd("myimage/hello-world:mytag1");
+
+        verify(this.dockerClient, times(1)).removeImageCmd("myimage/hello-world:2222222");
+        verify(this.dockerClient, never()).removeImageCmd("2");
+
+        assertThat(summary.getRemovedTags(), is(3));
+        assertThat(summary.getRemovedImages(), is(1));
+    }
+
+    @Test
+    public void shouldUntagImageTheDaemonRefusesToRemoveById() {
+        final RemoveImageCmd removeById = mock(RemoveImageCmd.class);
+        when(removeById.exec()).thenThrow(new ConflictException("image is referenced in multiple repositories"));
+        when(this.dockerClient.removeImageCmd("1")).thenReturn(removeById);
+
+        final RemovalSummary summary = this.docker.remove(Arrays.asList("myimage/hello-world:1111111",
+                "myimage/hello-world:mytag1"), this.docker.imageIndex(), 2);
+
+        verify(this.dockerClient, times(1)).removeImageCmd("myimage/hello-world:1111111");
+        verify(this.dockerClient, times(1)).removeImageCmd("myimage/hello-world:mytag1");
+        assertThat(summary.getRemovedTags(), is(2));
+    }
+
+    private Image image(String json) throws IOException {
+        return new ObjectMapper().readValue(json, Image.class);
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.TagImageCmd;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerTagTest {
+
+    private Docker docker;
+    private DockerClient dockerClient;
+
+    @Before
+    public void mockDockerClient() {
+        this.dockerClient = mock(DockerClient.class);
+
+        final TagImageCmd tagImageCmd = mock(TagImageCmd.class);
+        when(tagImageCmd.withForce(anyBoolean())).thenReturn(tagImageCmd);
+        when(this.dockerClient.tagImageCmd(anyString(), anyString(), anyString())).thenReturn(tagImageCmd);
+
+        this.docker = new Docker.DockerConfig().build();
+        this.docker.dockerClient = this.dockerClient;
+    }
+
+    @Test
+    public void shouldSplitTagsOfImagesOfRegistriesWithPort() {
+        this.docker.tag("sha256:1234", Arrays.asList("localhost:5000/tomitribe/app:master", "localhost:5000/tomitribe/app"));
+
+        verify(this.dockerClient).tagImageCmd("sha256:1234", "localhost:5000/tomitribe/app", "master");
+        verify(this.dockerClient).tagImageCmd("sha256:1234", "localhost:5000/tomitribe/app", "latest");
+    }
+
+    @Test
+    public void shouldSplitTagsOfImagesOfDeepNamespaces() {
+        this.docker.tag("sha256:1234", Arrays.asList("registry.example.com:443/org/team/group/app:v1"));
+
+        verify(this.dockerClient).tagImageCmd("sha256:1234", "registry.example.com:443/org/team/group/app", "v1");
+    }
+
+}
@@ -25,6 +25,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.Set;
 
@@ -104,6 +105,24 @@ public class DockerTest {
         }
     }
 
+    @Test
+    public void shouldTagAnImageByIdWithSeveralTags() {
+
+        try {
+            File dockerFile = new File(Thread.currentThread().getContextClassLoader()
+                    .getResource("simple/TestDockerFile").getFile());
+
+            final String imageId = docker.build(dockerFile, false, "lieutenant/test", "mytag");
+            docker.tag(imageId, Arrays.asList("lieutenant/test:myothertag", "lieutenant/test:mythirdtag"));
+
+            assertThat(docker.imageId("lieutenant/test", "myothertag"), is(imageId));
+            assertThat(docker.imageId("lieutenant/test", "mythirdtag"), is(imageId));
+        } finally {
+            docker.remove(Arrays.asList("lieutenant/test:mytag", "lieutenant/test:myothertag", "lieutenant/test:mythirdtag"),
+                    docker.imageIndex(), 1);
+        }
+    }
+
     @Test
     public void shouldReturnListOfImagesByName() {
         try {
@@ -125,6 +144,22 @@ public class DockerTest {
         }
     }
 
+    @Test
+    public void shouldRemoveAllTagsOfAnImageAtOnce() {
+        File dockerFile = new File(Thread.currentThread().getContextClassLoader()
+                .getResource("simple/TestDockerFile").getFile());
+
+        docker.build(dockerFile, false, "lieutenant/test", "mytag");
+        docker.tag("lieutenant/test", "mytag", "myothertag");
+
+        final RemovalSummary summary = docker.remove(Arrays.asList("lieutenant/test:mytag", "lieutenant/test:myothertag"),
+                docker.imageIndex(), 2);
+
+        assertThat(summary.getRemovedTags(), is(2));
+        assertThat(summary.getRemovedImages(), is(1));
+        assertThat(docker.imageExists("lieutenant/test", "mytag"), is(false));
+    }
+
     @Test
     public void shouldReturnFalseInCaseOfNotExistingImage() {
         assertThat(docker.imageExists("alex", "soto"), is(false));
@@ -24,7 +24,10 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Set;
 
 import static org.junit.Assert.assertThat;
@@ -51,4 +54,53 @@ public class DockerfileFinderTest {
 
     }
 
+    @Test
+    public void shouldNotWalkIgnoredDirectories() throws IOException {
+        final File dockerfile = dockerfile("app/Dockerfile");
+        dockerfile(".git/Dockerfile");
+        dockerfile("target/Dockerfile");
+        dockerfile("node_modules/module/Dockerfile");
+        dockerfile("vendor/lib/Dockerfile");
+        dockerfile("app/generated/Dockerfile");
+        dockerfile("docs/Dockerfile");
+        final File included = dockerfile("app/build/Dockerfile");
+
+        write(".gitignore", "target/\nnode_modules\n");
+        write("app/.gitignore", "generated\n/build\n!build\n");
+        write(".dockerignore", "docs\n");
+
+        DockerfileFinder dockerfileFinder = new DockerfileFinder(folder.getRoot(), Arrays.asList("vendor"));
+        Set<Path> dockerfiles = dockerfileFinder.dockerfiles();
+
+        assertThat(dockerfiles.size(), CoreMatchers.is(2));
+        assertThat(dockerfiles, CoreMatchers.hasItems(dockerfile.toPath(), included.toPath()));
+    }
+
+    @Test
+    public void shouldFilterKnownCandidates() throws IOException {
+        final File dockerfile = dockerfile("app/Dockerfile");
+        dockerfile("vendor/lib/Dockerfile");
+        dockerfile("docs/Dockerfile");
+        write("app/README.md", "readme");
+        write(".dockerignore", "docs\n");
+
+        DockerfileFinder dockerfileFinder = new DockerfileFinder(folder.getRoot(), Arrays.asList("vendor"));
+        Set<Path> dockerfiles = dockerfileFinder.dockerfiles(Arrays.asList("app/Dockerfile", "app/README.md",
+                "vendor/lib/Dockerfile", "docs/Dockerfile", "removed/Dockerfile"));
+
+        assertThat(dockerfiles.size(), CoreMatchers.is(1));
+        assertThat(dockerfiles, CoreMatchers.hasItems(dockerfile.toPath()));
+    }
+
+    private File dockerfile(String path) throws IOException {
+        return write(path, "FROM busybox");
+    }
+
+    private File write(String path, String content) throws IOException {
+        final File file = new File(folder.getRoot(), path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
 }
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GitIgnoreTest {
+
+    @Test
+    public void shouldMatchPatternsWithoutSlashAtAnyDepth() {
+        final GitIgnore gitIgnore = new GitIgnore(Arrays.asList("# comment", "target", "*.log"));
+
+        assertThat(gitIgnore.isIgnored("target", true), is(true));
+        assertThat(gitIgnore.isIgnored("module/target", true), is(true));
+        assertThat(gitIgnore.isIgnored("module/build.log", false), is(true));
+        assertThat(gitIgnore.isIgnored("src", true), is(nullValue()));
+    }
+
+    @Test
+    public void shouldAnchorPatternsWithSlash() {
+        final GitIgnore gitIgnore = new GitIgnore(Arrays.asList("/build", "docs/generated", "out/"));
+
+        assertThat(gitIgnore.isIgnored("build", true), is(true));
+        assertThat(gitIgnore.isIgnored("module/build", true), is(nullValue()));
+        assertThat(gitIgnore.isIgnored("docs/generated", true), is(true));
+        assertThat(gitIgnore.isIgnored("module/docs/generated", true), is(nullValue()));
+        assertThat(gitIgnore.isIgnored("out", true), is(true));
+        assertThat(gitIgnore.isIgnored("out", false), is(nullValue()));
+    }
+
+    @Test
+    public void shouldIncludeBackNegatedPatterns() {
+        final GitIgnore gitIgnore = new GitIgnore(Arrays.asList("build*", "!buildSrc"));
+
+        assertThat(gitIgnore.isIgnored("build", true), is(true));
+        assertThat(gitIgnore.isIgnored("buildSrc", true), is(false));
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.model.Image;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ImageIndexTest {
+
+    @Test
+    public void shouldGroupTagsByRepository() throws IOException {
+        final ImageIndex imageIndex = new ImageIndex(Arrays.asList(
+                image("{\"Id\":\"1\",\"RepoTags\":[\"myimage/hello-world:1234567\",\"myimage/hello-world:master\",\"other:latest\"]}"),
+                image("{\"Id\":\"2\",\"RepoTags\":[\"localhost:5000/myimage/hello-world:1234567\"]}"),
+                image("{\"Id\":\"3\",\"RepoTags\":[\"<none>:<none>\"]}")));
+
+        assertThat(imageIndex.tags("myimage/hello-world").size(), is(2));
+        assertThat(imageIndex.tags("myimage/hello-world"), hasItems("myimage/hello-world:1234567", "myimage/hello-world:master"));
+        assertThat(imageIndex.tags("localhost:5000/myimage/hello-world"), hasItems("localhost:5000/myimage/hello-world:1234567"));
+        assertThat(imageIndex.tags("myimage/unknown").isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldGroupTagsByImageId() throws IOException {
+        final ImageIndex imageIndex = new ImageIndex(Arrays.asList(
+                image("{\"Id\":\"1\",\"RepoTags\":[\"myimage/hello-world:1234567\",\"other:latest\"]}"),
+                image("{\"Id\":\"2\",\"RepoTags\":[\"myimage/hello-world:master\"]}")));
+
+        assertThat(imageIndex.imageId("myimage/hello-world:1234567"), is("1"));
+        assertThat(imageIndex.imageId("myimage/hello-world:master"), is("2"));
+        assertThat(imageIndex.imageId("myimage/hello-world:unknown"), is(nullValue()));
+
+        assertThat(imageIndex.tagsOfImage("1").size(), is(2));
+        assertThat(imageIndex.tagsOfImage("1"), hasItems("myimage/hello-world:1234567", "other:latest"));
+        assertThat(imageIndex.tagsOfImage("3").isEmpty(), is(true));
+    }
+
+    private Image image(String json) throws IOException {
+        return new ObjectMapper().readValue(json, Image.class);
+    }
+
+}
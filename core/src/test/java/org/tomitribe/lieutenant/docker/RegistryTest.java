@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.lieutenant.docker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RegistryTest {
+
+    private static final String REPOSITORY = "lieutenant/app";
+
+    private final Map<String, String> manifests = Collections.synchronizedMap(new TreeMap<String, String>());
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger cancelledUploads = new AtomicInteger();
+    private volatile boolean tokenRequired;
+
+    private HttpServer server;
+    private Registry registry;
+
+    @Before
+    public void startRegistry() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/v2/" + REPOSITORY + "/", new FakeRegistry());
+        this.server.createContext("/token", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                tokenRequests.incrementAndGet();
+                respond(exchange, 200, "{\"token\":\"secret\"}");
+            }
+        });
+        this.server.start();
+
+        this.registry = Registry.of("localhost:" + this.server.getAddress().getPort(), null, null);
+    }
+
+    @After
+    public void stopRegistry() {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void shouldListTagsOfEveryPage() {
+        for (int i = 0; i < Registry.PAGE_SIZE + 50; i++) {
+            this.manifests.put("tag" + i, "sha256:" + i);
+        }
+
+        final Set<String> tags = this.registry.tags(REPOSITORY);
+
+        assertThat(tags.size(), is(Registry.PAGE_SIZE + 50));
+        assertThat(tags, hasItems("tag0", "tag99", "tag149"));
+    }
+
+    @Test
+    public void shouldListNoTagsOfUnknownRepository() {
+        assertThat(this.registry.tags("lieutenant/unknown").isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldResolveDigestOfTags() {
+        this.manifests.put("1.0", "sha256:aaaa");
+
+        assertThat(this.registry.digest(REPOSITORY, "1.0"), is("sha256:aaaa"));
+        assertThat(this.registry.digest(REPOSITORY, "2.0"), nullValue());
+    }
+
+    @Test
+    public void shouldReadImageIdFromManifest() {
+        this.manifests.put("1.0", "sha256:aaaa");
+
+        assertThat(this.registry.imageId(REPOSITORY, "1.0"), is("sha256:aaaa-config"));
+        assertThat(this.registry.imageId(REPOSITORY, "2.0"), nullValue());
+    }
+
+    @Test
+    public void shouldListLayersOfImages() {
+        this.manifests.put("1.0", "sha256:aaaa");
+
+        assertThat(this.registry.layers(REPOSITORY, "1.0"), is(Arrays.asList("sha256:base", "sha256:aaaa-layer")));
+        assertThat(this.registry.layers(REPOSITORY, "2.0").isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldMountLayersFromOtherRepositories() {
+        assertThat(this.registry.mount(REPOSITORY, "sha256:base", "lieutenant/base"), is(true));
+        assertThat(this.cancelledUploads.get(), is(0));
+
+        // the registry starts an upload when it can not mount, which is cancelled
+        assertThat(this.registry.mount(REPOSITORY, "sha256:unknown", "lieutenant/base"), is(false));
+        assertThat(this.cancelledUploads.get(), is(1));
+    }
+
+    @Test
+    public void shouldDeleteOnlyManifestsNotPointedByTagsToKeep() {
+        this.manifests.put("1111111", "sha256:aaaa");
+        this.manifests.put("master", "sha256:aaaa");
+        this.manifests.put("2222222", "sha256:bbbb");
+        this.manifests.put("feature", "sha256:cccc");
+
+        final RemovalSummary summary = this.registry.remove(REPOSITORY, new HashSet<>(this.manifests.keySet()),
+                Arrays.asList("1111111", "2222222", "feature"), 2);
+
+        assertThat(summary.getRemovedTags(), is(2));
+        assertThat(summary.getRemovedImages(), is(2));
+        assertThat(this.manifests.keySet(), is((Set<String>) new HashSet<>(Arrays.asList("1111111", "master"))));
+    }
+
+    @Test
+    public void shouldAuthenticateWithBearerTokenOncePerScope() {
+        this.tokenRequired = true;
+        this.manifests.put("1.0", "sha256:aaaa");
+
+        assertThat(this.registry.tags(REPOSITORY), hasItems("1.0"));
+        assertThat(this.registry.digest(REPOSITORY, "1.0"), is("sha256:aaaa"));
+        assertThat(this.tokenRequests.get(), is(1));
+    }
+
+    @Test
+    public void shouldSplitImageReferences() {
+        assertThat(Registry.host("localhost:5000/lieutenant/app:1.0"), is("localhost:5000"));
+        assertThat(Registry.host("registry.example.com/app"), is("registry.example.com"));
+        assertThat(Registry.host("lieutenant/app:1.0"), nullValue());
+
+        assertThat(Registry.tag("localhost:5000/lieutenant/app:1.0"), is("1.0"));
+        assertThat(Registry.tag("localhost:5000/lieutenant/app"), is("latest"));
+
+        assertThat(Registry.repository("localhost:5000/lieutenant/app:1.0"), is("lieutenant/app"));
+        assertThat(Registry.repository("lieutenant/app"), is("lieutenant/app"));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            final byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, content.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(content);
+            }
+        }
+        exchange.close();
+    }
+
+    /**
+     * Serves the parts of the registry API used by lieutenant, as registry:2 does, for a single repository.
+     */
+    private class FakeRegistry implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final String path = exchange.getRequestURI().getPath().substring(("/v2/" + REPOSITORY + "/").length());
+            final String method = exchange.getRequestMethod();
+
+            if (tokenRequired && !"Bearer secret".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().add("WWW-Authenticate", String.format(
+                        "Bearer realm=\"http://localhost:%d/token\",service=\"fake\"", server.getAddress().getPort()));
+                respond(exchange, 401, null);
+                return;
+            }
+
+            if ("tags/list".equals(path)) {
+                listTags(exchange);
+            } else if (path.startsWith("manifests/") && "HEAD".equals(method)) {
+                final String digest = manifests.get(path.substring("manifests/".length()));
+                if (digest == null) {
+                    respond(exchange, 404, null);
+                } else {
+                    exchange.getResponseHeaders().add("Docker-Content-Digest", digest);
+                    respond(exchange, 200, null);
+                }
+            } else if (path.startsWith("manifests/") && "GET".equals(method)) {
+                final String digest = manifests.get(path.substring("manifests/".length()));
+                if (digest == null) {
+                    respond(exchange, 404, null);
+                } else {
+                    respond(exchange, 200, String.format("{\"schemaVersion\":2,\"config\":{\"digest\":\"%s-config\"},"
+                            + "\"layers\":[{\"digest\":\"sha256:base\"},{\"digest\":\"%s-layer\"}]}", digest, digest));
+                }
+            } else if ("blobs/uploads/".equals(path) && "POST".equals(method)) {
+                final String query = exchange.getRequestURI().getQuery();
+                if (query.contains("from=lieutenant/base") && query.contains("mount=sha256:base")) {
+                    respond(exchange, 201, null);
+                } else {
+                    exchange.getResponseHeaders().add("Location", "/v2/" + REPOSITORY + "/blobs/uploads/1234");
+                    respond(exchange, 202, null);
+                }
+            } else if ("blobs/uploads/1234".equals(path) && "DELETE".equals(method)) {
+                cancelledUploads.incrementAndGet();
+                respond(exchange, 204, null);
+            } else if (path.startsWith("manifests/") && "DELETE".equals(method)) {
+                final String digest = path.substring("manifests/".length());
+                final boolean deleted = manifests.values().removeAll(Collections.singleton(digest));
+                respond(exchange, deleted ? 202 : 404, null);
+            } else {
+                respond(exchange, 404, null);
+            }
+        }
+
+        private void listTags(HttpExchange exchange) throws IOException {
+            int n = Integer.MAX_VALUE;
+            String last = null;
+            for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+                final String[] pair = parameter.split("=");
+                if ("n".equals(pair[0])) {
+                    n = Integer.parseInt(pair[1]);
+                } else if ("last".equals(pair[0])) {
+                    last = pair[1];
+                }
+            }
+
+            final List<String> page = new ArrayList<>();
+            final List<String> tags;
+            synchronized (manifests) {
+                tags = new ArrayList<>(manifests.keySet());
+            }
+            for (String tag : tags) {
+                if ((last == null || tag.compareTo(last) > 0) && page.size() < n) {
+                    page.add(tag);
+                }
+            }
+
+            if (page.size() == n && !page.get(n - 1).equals(tags.get(tags.size() - 1))) {
+                exchange.getResponseHeaders().add("Link", String.format(
+                        "</v2/%s/tags/list?n=%d&last=%s>; rel=\"next\"", REPOSITORY, n, page.get(n - 1)));
+            }
+
+            final StringBuilder body = new StringBuilder("{\"name\":\"").append(REPOSITORY).append("\",\"tags\":[");
+            for (int i = 0; i < page.size(); i++) {
+                body.append(i == 0 ? "" : ",").append('"').append(page.get(i)).append('"');
+            }
+            respond(exchange, 200, body.append("]}").toString());
+        }
+    }
+}
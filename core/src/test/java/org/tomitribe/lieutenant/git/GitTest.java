@@ -203,4 +203,109 @@ public class GitTest {
         assertThat(git.tagList(trunkedCommit).size(), CoreMatchers.is(0));
     }
 
+    @Test
+    public void shouldCaptureSnapshotOfCurrentState() throws IOException, TimeoutException, InterruptedException {
+
+        final Git git = new Git(this.gitRepo);
+
+        commitFile();
+
+        int exitValue = new ProcessExecutor().directory(this.gitRepo)
+                .command("git", "tag", "-a", "v1.4", "-m", "\"my version 1.4\"")
+                .execute().getExitValue();
+        if (exitValue != 0) {
+            throw new RuntimeException();
+        }
+
+        final GitSnapshot snapshot = git.snapshot();
+
+        assertThat(snapshot.getBranch(), is("master"));
+        assertThat(snapshot.getRevision(), is(git.trunkedLatestCommit("master")));
+        assertThat(snapshot.isDirty(), is(false));
+        assertThat(snapshot.getBranches(), hasItems("master"));
+        assertThat(snapshot.getTags(), hasItems("v1.4"));
+    }
+
+    @Test
+    public void shouldCaptureSnapshotOfRepositoryWithoutCommits() throws IOException {
+        final Git git = new Git(this.gitRepo);
+
+        Files.write(Paths.get(this.gitRepo.getAbsolutePath(), "hello.txt"), "Hello".getBytes());
+
+        final GitSnapshot snapshot = git.snapshot();
+        assertThat(snapshot.isDirty(), is(true));
+        assertThat(snapshot.getRevision(), CoreMatchers.nullValue());
+    }
+
+    @Test
+    public void shouldScopeDirtinessToDirectories() throws IOException, TimeoutException, InterruptedException {
+        final Git git = new Git(this.gitRepo);
+
+        commitFile();
+
+        Files.createDirectories(Paths.get(this.gitRepo.getAbsolutePath(), "app", "src"));
+        Files.write(Paths.get(this.gitRepo.getAbsolutePath(), "app", "src", "Main.java"), "class Main {}".getBytes());
+
+        final GitSnapshot snapshot = git.snapshot();
+        assertThat(snapshot.getChangedPaths(), hasItems("app/src/Main.java"));
+        assertThat(snapshot.isDirty(), is(true));
+        assertThat(snapshot.isDirty(""), is(true));
+        assertThat(snapshot.isDirty("app"), is(true));
+        assertThat(snapshot.isDirty("app/src"), is(true));
+        assertThat(snapshot.isDirty("ap"), is(false));
+        assertThat(snapshot.isDirty("other"), is(false));
+    }
+
+    @Test
+    public void shouldSeeTagsCreatedAfterIndexingThem() throws IOException, TimeoutException, InterruptedException {
+        final Git git = new Git(this.gitRepo);
+
+        commitFile();
+        tag("-a", "v1.4", "-m", "\"my version 1.4\"");
+
+        final String trunkedCommit = git.trunkedLatestCommit(git.currentBranch());
+        assertThat(git.tagList(trunkedCommit), hasItems("v1.4"));
+
+        tag("v1.5");
+        assertThat(git.tagList(trunkedCommit), hasItems("v1.4", "v1.5"));
+
+        final int exitValue = new ProcessExecutor().directory(this.gitRepo)
+                .command("git", "pack-refs", "--all").execute().getExitValue();
+        if (exitValue != 0) {
+            throw new RuntimeException();
+        }
+        tag("-d", "v1.4");
+        assertThat(git.tagList(trunkedCommit).size(), is(1));
+        assertThat(git.tagList(trunkedCommit), hasItems("v1.5"));
+    }
+
+    private void tag(String... arguments) throws IOException, TimeoutException, InterruptedException {
+        final String[] command = new String[arguments.length + 2];
+        command[0] = "git";
+        command[1] = "tag";
+        System.arraycopy(arguments, 0, command, 2, arguments.length);
+
+        final int exitValue = new ProcessExecutor().directory(this.gitRepo).command(command).execute().getExitValue();
+        if (exitValue != 0) {
+            throw new RuntimeException();
+        }
+    }
+
+    @Test
+    public void shouldListTrackedFilesFromIndex() throws IOException, TimeoutException, InterruptedException {
+        final Git git = new Git(this.gitRepo);
+
+        Files.createDirectories(Paths.get(this.gitRepo.getAbsolutePath(), "app"));
+        Files.write(Paths.get(this.gitRepo.getAbsolutePath(), "app", "Dockerfile"), "FROM busybox".getBytes());
+        Files.write(Paths.get(this.gitRepo.getAbsolutePath(), "Dockerfile.test"), "FROM busybox".getBytes());
+        commitFile();
+
+        Files.createDirectories(Paths.get(this.gitRepo.getAbsolutePath(), "target"));
+        Files.write(Paths.get(this.gitRepo.getAbsolutePath(), "target", "Dockerfile"), "FROM busybox".getBytes());
+
+        final Set<String> dockerfiles = git.trackedFiles("Dockerfile");
+        assertThat(dockerfiles.size(), is(2));
+        assertThat(dockerfiles, hasItems("app/Dockerfile", "Dockerfile.test"));
+    }
+
 }
@@ -42,6 +42,19 @@ public class ConfigUtil {
             dockerConfig.withUri(dockerConfigExtension.getUrl());
             dockerConfig.withDockerCertPath(dockerConfigExtension.getDockerCertPath());
             dockerConfig.withVersion(dockerConfigExtension.getVersion());
+
+            if (dockerConfigExtension.getUnixSocket() != null) {
+                dockerConfig.withUnixSocket(dockerConfigExtension.getUnixSocket());
+            }
+            if (dockerConfigExtension.getReadTimeout() != null) {
+                dockerConfig.withReadTimeout(dockerConfigExtension.getReadTimeout());
+            }
+            if (dockerConfigExtension.getConnectTimeout() != null) {
+                dockerConfig.withConnectTimeout(dockerConfigExtension.getConnectTimeout());
+            }
+            if (dockerConfigExtension.getMaxConnections() != null) {
+                dockerConfig.withMaxConnections(dockerConfigExtension.getMaxConnections());
+            }
         }
 
         return dockerConfig;
@@ -63,6 +76,16 @@ public class ConfigUtil {
         lieutenantConfig.setForce(extension.isForce());
         lieutenantConfig.setWithTags(extension.isWithTags());
         lieutenantConfig.setWithBranches(extension.isWithBranch());
+        lieutenantConfig.setJobs(extension.getJobs());
+        lieutenantConfig.setPushJobs(extension.getPushJobs());
+        lieutenantConfig.setFailFast(extension.isFailFast());
+        lieutenantConfig.setPipeline(extension.isPipeline());
+        lieutenantConfig.setPushRetries(extension.getPushRetries());
+        lieutenantConfig.setPushRetryDelay(extension.getPushRetryDelay());
+        lieutenantConfig.setExcludes(extension.getExcludes());
+        lieutenantConfig.setDiscoverFromGitIndex(extension.isDiscoverFromGitIndex());
+        lieutenantConfig.setWatchDebounce(extension.getWatchDebounce());
+        lieutenantConfig.setPurgeRegistry(extension.isPurgeRegistry());
 
 
         return lieutenantConfig;
@@ -32,6 +32,22 @@ public class DockerConfig {
     @Optional
     private String dockerCertPath;
 
+    @Input
+    @Optional
+    private String unixSocket;
+
+    @Input
+    @Optional
+    private Integer readTimeout;
+
+    @Input
+    @Optional
+    private Integer connectTimeout;
+
+    @Input
+    @Optional
+    private Integer maxConnections;
+
     public String getUrl() {
         return url;
     }
@@ -55,4 +71,36 @@ public class DockerConfig {
     public void setDockerCertPath(String dockerCertPath) {
         this.dockerCertPath = dockerCertPath;
     }
+
+    public String getUnixSocket() {
+        return unixSocket;
+    }
+
+    public void setUnixSocket(String unixSocket) {
+        this.unixSocket = unixSocket;
+    }
+
+    public Integer getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Integer readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Integer connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(Integer maxConnections) {
+        this.maxConnections = maxConnections;
+    }
 }
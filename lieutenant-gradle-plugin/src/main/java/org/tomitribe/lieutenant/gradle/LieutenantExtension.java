@@ -18,6 +18,9 @@ package org.tomitribe.lieutenant.gradle;
 import groovy.lang.Closure;
 import org.gradle.util.ConfigureUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class LieutenantExtension {
 
     private String version = "1.0-SNAPSHOT";
@@ -28,6 +31,16 @@ public class LieutenantExtension {
     private boolean withBranch = true;
     private boolean withTags = true;
     private String exclusionImages = null;
+    private int jobs = 1;
+    private int pushJobs = 1;
+    private boolean failFast = true;
+    private boolean pipeline = false;
+    private List<String> excludes = new ArrayList<>();
+    private boolean discoverFromGitIndex = true;
+    private long watchDebounce = 500;
+    private boolean purgeRegistry = false;
+    private int pushRetries = 3;
+    private long pushRetryDelay = 1000;
 
     private DockerRegistryCredentials registryCredentials;
     DockerConfig dockerConfig;
@@ -66,6 +79,86 @@ public class LieutenantExtension {
         this.exclusionImages = exclusionImages;
     }
 
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
+
+    public boolean isDiscoverFromGitIndex() {
+        return discoverFromGitIndex;
+    }
+
+    public void setDiscoverFromGitIndex(boolean discoverFromGitIndex) {
+        this.discoverFromGitIndex = discoverFromGitIndex;
+    }
+
+    public int getPushRetries() {
+        return pushRetries;
+    }
+
+    public void setPushRetries(int pushRetries) {
+        this.pushRetries = pushRetries;
+    }
+
+    public long getPushRetryDelay() {
+        return pushRetryDelay;
+    }
+
+    public void setPushRetryDelay(long pushRetryDelay) {
+        this.pushRetryDelay = pushRetryDelay;
+    }
+
+    public long getWatchDebounce() {
+        return watchDebounce;
+    }
+
+    public void setWatchDebounce(long watchDebounce) {
+        this.watchDebounce = watchDebounce;
+    }
+
+    public boolean isPurgeRegistry() {
+        return purgeRegistry;
+    }
+
+    public void setPurgeRegistry(boolean purgeRegistry) {
+        this.purgeRegistry = purgeRegistry;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
+    public int getPushJobs() {
+        return pushJobs;
+    }
+
+    public void setPushJobs(int pushJobs) {
+        this.pushJobs = pushJobs;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
     public String getVersion() {
         return version;
     }
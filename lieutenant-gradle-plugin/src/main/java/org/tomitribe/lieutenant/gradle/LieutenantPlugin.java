@@ -59,5 +59,9 @@ public class LieutenantPlugin implements Plugin<Project> {
         final Map<String, Class<?>> purgeParams = new HashMap<>();
         purgeParams.put("type", LieutenantPurgeTask.class);
         project.task(purgeParams, "lieutenantpurge");
+
+        final Map<String, Class<?>> watchParams = new HashMap<>();
+        watchParams.put("type", LieutenantWatchTask.class);
+        project.task(watchParams, "lieutenantwatch");
     }
 }
@@ -20,6 +20,7 @@ import org.gradle.api.tasks.TaskAction;
 import org.tomitribe.lieutenant.Config;
 import org.tomitribe.lieutenant.Lieutenant;
 import org.tomitribe.lieutenant.LieutenantConfig;
+import org.tomitribe.lieutenant.PushFailedException;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -43,22 +44,28 @@ public class LieutenantPushTask extends DefaultTask {
 
         final File lieutenantFile = new File(projectRoot, "lieutenant.yml");
         final List<String> push = new ArrayList<>();
-        if (lieutenantFile.exists()) {
+        try {
+            if (lieutenantFile.exists()) {
 
-            Config config = Config.readFile(lieutenantFile);
-            LieutenantConfig lieutenantConfig = ConfigUtil.toLieutenantConfig(extension);
+                Config config = Config.readFile(lieutenantFile);
+                LieutenantConfig lieutenantConfig = ConfigUtil.toLieutenantConfig(extension);
 
-            config.setDockerConfig(ConfigUtil.toDockerConfig(extension));
-            config.setLieutenantConfig(lieutenantConfig);
+                config.setDockerConfig(ConfigUtil.toDockerConfig(extension));
+                config.setLieutenantConfig(lieutenantConfig);
 
-            push.addAll(lieutenant.push(config));
+                push.addAll(lieutenant.push(config));
 
-        } else {
-            LieutenantConfig lieutenantConfig = ConfigUtil.toLieutenantConfig(extension);
-            push.addAll(lieutenant.push(lieutenantConfig, ConfigUtil.toDockerConfig(extension)));
+            } else {
+                LieutenantConfig lieutenantConfig = ConfigUtil.toLieutenantConfig(extension);
+                push.addAll(lieutenant.push(lieutenantConfig, ConfigUtil.toDockerConfig(extension)));
+            }
+        } catch (PushFailedException e) {
+            // images pushed before the failure are still published to the build
+            push.addAll(e.getPushedImages());
+            throw e;
+        } finally {
+            getProject().getExtensions().getExtraProperties().set("lieutenantImages", Collections.unmodifiableList(push));
         }
 
-        getProject().getExtensions().getExtraProperties().set("lieutenantImages", Collections.unmodifiableList(push));
-
     }
 }
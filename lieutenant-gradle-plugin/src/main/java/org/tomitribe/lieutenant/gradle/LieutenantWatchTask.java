@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tomitribe.lieutenant.gradle;
+
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.incremental.IncrementalTaskInputs;
+import org.gradle.api.tasks.incremental.InputFileDetails;
+import org.tomitribe.lieutenant.Config;
+import org.tomitribe.lieutenant.Lieutenant;
+import org.tomitribe.lieutenant.LieutenantConfig;
+import org.tomitribe.lieutenant.docker.BuildContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the applications whose build context changed since the last run, every application on the first one.
+ *
+ * Build contexts are the inputs of the task, so running it with gradle --continuous rebuilds the changed applications
+ * whenever their files change. Unlike the watch of the command line, the task itself never blocks.
+ */
+public class LieutenantWatchTask extends DefaultTask {
+
+    private LieutenantExtension extension;
+    private Lieutenant lieutenant;
+    private Config config;
+    private Map<String, Set<File>> buildContextFiles;
+
+    @InputFiles
+    public FileCollection getBuildContexts() {
+        final List<File> files = new ArrayList<>();
+        for (Set<File> contextFiles : buildContextFiles().values()) {
+            files.addAll(contextFiles);
+        }
+        return getProject().files(files);
+    }
+
+    /**
+     * @return file listing the images built by the last run.
+     */
+    @OutputFile
+    public File getImagesFile() {
+        return new File(getProject().getBuildDir(), "lieutenant/images.txt");
+    }
+
+    @TaskAction
+    public void build(IncrementalTaskInputs inputs) throws IOException {
+        final List<String> build = new ArrayList<>();
+
+        if (inputs.isIncremental()) {
+            final Set<File> changes = new HashSet<>();
+            final Action<InputFileDetails> collect = new Action<InputFileDetails>() {
+                @Override
+                public void execute(InputFileDetails details) {
+                    changes.add(details.getFile());
+                }
+            };
+            inputs.outOfDate(collect);
+            inputs.removed(collect);
+
+            final Set<String> applications = affectedApplications(changes);
+            if (!applications.isEmpty()) {
+                getLogger().lifecycle(String.format("Changes found in %s, rebuilding", applications));
+                build.addAll(lieutenant().build(config(), applications));
+            }
+        } else {
+            build.addAll(lieutenant().build(config()));
+        }
+
+        final File imagesFile = getImagesFile();
+        Files.createDirectories(imagesFile.getParentFile().toPath());
+        Files.write(imagesFile.toPath(), build, StandardCharsets.UTF_8);
+
+        getProject().getExtensions().getExtraProperties().set("lieutenantImages", Collections.unmodifiableList(build));
+    }
+
+    /**
+     * A removed file is no longer in any build context, so applications are matched by the directory of their context.
+     */
+    private Set<String> affectedApplications(Set<File> changes) {
+        final Set<String> applications = new HashSet<>();
+        for (Map.Entry<String, Set<File>> context : buildContextFiles().entrySet()) {
+            final Path root = new BuildContext(new File(ConfigUtil.projectRoot(getProject(), extension()),
+                    config().getApplication(context.getKey()).getBuild())).getDirectory().toPath();
+
+            for (File change : changes) {
+                if (change.toPath().startsWith(root)) {
+                    applications.add(context.getKey());
+                    break;
+                }
+            }
+        }
+        return applications;
+    }
+
+    private Map<String, Set<File>> buildContextFiles() {
+        if (buildContextFiles == null) {
+            buildContextFiles = lieutenant().buildContextFiles(config());
+        }
+        return buildContextFiles;
+    }
+
+    private Config config() {
+        if (config == null) {
+            final File lieutenantFile = new File(ConfigUtil.projectRoot(getProject(), extension()), "lieutenant.yml");
+            final LieutenantConfig lieutenantConfig = ConfigUtil.toLieutenantConfig(extension());
+
+            if (lieutenantFile.exists()) {
+                config = Config.readFile(lieutenantFile);
+                config.setDockerConfig(ConfigUtil.toDockerConfig(extension()));
+                config.setLieutenantConfig(lieutenantConfig);
+            } else {
+                config = lieutenant().discoverApplications(lieutenantConfig, ConfigUtil.toDockerConfig(extension()));
+            }
+        }
+        return config;
+    }
+
+    private Lieutenant lieutenant() {
+        if (lieutenant == null) {
+            lieutenant = new Lieutenant(ConfigUtil.projectRoot(getProject(), extension()));
+        }
+        return lieutenant;
+    }
+
+    private LieutenantExtension extension() {
+        if (extension == null) {
+            extension = getProject().getExtensions().findByType(LieutenantExtension.class);
+
+            if (extension == null) {
+                extension = new LieutenantExtension();
+            }
+        }
+        return extension;
+    }
+
+}